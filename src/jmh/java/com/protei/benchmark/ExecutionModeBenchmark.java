@@ -0,0 +1,124 @@
+package com.protei.benchmark;
+
+import com.protei.task.execution.DatabasePermits;
+import com.protei.task.execution.ExecutionProperties;
+import com.protei.task.execution.VirtualThreadTomcatCustomizer;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.coyote.http11.Http11NioProtocol;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests submitted by 64 concurrent callers, each running one query that holds one of
+ * {@code connections} pooled connections for {@code databaseMicros}. The platform mode runs them
+ * on a fixed pool of {@code threads}: 10 like Quartz's worker pool, 200 like Tomcat's default
+ * maximum of request threads. The virtual mode runs them on the executor
+ * {@link VirtualThreadTomcatCustomizer} installs in Tomcat, each under a {@link DatabasePermits}
+ * permit, one per pooled connection since no background work shares the pool here, and ignores
+ * {@code threads}.
+ * Throughput is requests per millisecond; the sample mode reports per-request latency percentiles
+ * including queueing. Tomcat's socket handling and the Quartz scheduler are not part of it.
+ *
+ * <p>Uses an in-memory H2 database, where pg_sleep is a Java alias, by default; pass
+ * -Dbenchmark.datasource.url (with .username and .password) to run against PostgreSQL instead.
+ * The virtual mode needs a Java 21 JVM, e.g. {@code -Djmh.args="ExecutionMode -jvm /path/to/java21"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(64)
+@Fork(1)
+public class ExecutionModeBenchmark {
+    private static final String H2_URL = "jdbc:h2:mem:execution;MODE=PostgreSQL;DB_CLOSE_DELAY=-1";
+    private static final String CREATE_SLEEP_ALIAS =
+            "create alias if not exists pg_sleep for \"" + ExecutionModeBenchmark.class.getName() + ".sleep\"";
+    private static final String SLEEP = "select pg_sleep(?)";
+
+    @Param({"platform", "virtual"})
+    public String mode;
+
+    @Param({"10", "200"})
+    public int threads;
+
+    @Param({"10", "40"})
+    public int connections;
+
+    @Param({"1000"})
+    public long databaseMicros;
+
+    private HikariDataSource dataSource;
+    private ExecutorService platformExecutor;
+    private Executor executor;
+
+    @Setup
+    public void setUp() throws SQLException {
+        Logging.quiet();
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(System.getProperty("benchmark.datasource.url", H2_URL));
+        config.setUsername(System.getProperty("benchmark.datasource.username", "sa"));
+        config.setPassword(System.getProperty("benchmark.datasource.password", ""));
+        config.setMaximumPoolSize(connections);
+        config.setMinimumIdle(connections);
+        dataSource = new HikariDataSource(config);
+        if (config.getJdbcUrl().startsWith("jdbc:h2:")) {
+            try (Connection connection = dataSource.getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.execute(CREATE_SLEEP_ALIAS);
+            }
+        }
+        if ("virtual".equals(mode)) {
+            Http11NioProtocol protocol = new Http11NioProtocol();
+            new VirtualThreadTomcatCustomizer().customize(protocol);
+            ExecutionProperties properties = new ExecutionProperties();
+            properties.setReservedConnections(0);
+            DatabasePermits permits = new DatabasePermits(dataSource, properties, new SimpleMeterRegistry());
+            executor = permits.limit(protocol.getExecutor());
+        } else {
+            platformExecutor = Executors.newFixedThreadPool(threads);
+            executor = platformExecutor;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (platformExecutor != null) {
+            platformExecutor.shutdownNow();
+        }
+        dataSource.close();
+    }
+
+    @Benchmark
+    public void request() {
+        CompletableFuture.runAsync(this::query, executor).join();
+    }
+
+    private void query() {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(SLEEP)) {
+            statement.setDouble(1, databaseMicros / 1_000_000.0);
+            statement.execute();
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * pg_sleep of the H2 database.
+     */
+    public static void sleep(double seconds) throws InterruptedException {
+        TimeUnit.MICROSECONDS.sleep((long) (seconds * 1_000_000));
+    }
+}
@@ -0,0 +1,83 @@
+package com.protei.benchmark;
+
+import com.protei.task.scheduler.ExpiredUsersHandler;
+import com.protei.task.scheduler.PresenceExpiryEngine;
+import com.protei.task.scheduler.PresenceExpiryProperties;
+import com.protei.task.scheduler.QuartzExpiryEngine;
+import com.protei.task.scheduler.TimingWheelExpiryEngine;
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.impl.StdSchedulerFactory;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timer churn of the expiry engines with {@code users} timers pending: heartbeats re-arm a random
+ * user, and status changes arm and cancel one. Engines are not started, so nothing expires.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExpiryEngineBenchmark {
+    private static final long DELAY_MS = 300000L;
+
+    @Param({"wheel", "quartz"})
+    public String engine;
+
+    @Param({"10000", "100000"})
+    public int users;
+
+    private PresenceExpiryEngine expiryEngine;
+    private Scheduler scheduler;
+
+    @Setup
+    public void setUp() throws SchedulerException {
+        Logging.quiet();
+        if ("quartz".equals(engine)) {
+            Properties properties = new Properties();
+            properties.setProperty(StdSchedulerFactory.PROP_SCHED_INSTANCE_NAME, "benchmark");
+            properties.setProperty("org.quartz.threadPool.threadCount", "1");
+            scheduler = new StdSchedulerFactory(properties).getScheduler();
+            expiryEngine = new QuartzExpiryEngine(scheduler, new SimpleMeterRegistry());
+        } else {
+            expiryEngine = new TimingWheelExpiryEngine(new PresenceExpiryProperties(),
+                    new StaticListableBeanFactory().getBeanProvider(ExpiredUsersHandler.class),
+                    new SimpleMeterRegistry());
+        }
+        for (long userId = 1; userId <= users; userId++) {
+            expiryEngine.arm(userId, SystemUserStatus.ONLINE, DELAY_MS);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SchedulerException {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    @Benchmark
+    public boolean rearm() {
+        return expiryEngine.rearm(randomUserId(), SystemUserStatus.ONLINE, DELAY_MS);
+    }
+
+    @Benchmark
+    public void armAndCancel() {
+        long userId = users + 1L + ThreadLocalRandom.current().nextInt(users);
+        expiryEngine.arm(userId, SystemUserStatus.ONLINE, DELAY_MS);
+        expiryEngine.cancel(userId);
+    }
+
+    private long randomUserId() {
+        return 1L + ThreadLocalRandom.current().nextInt(users);
+    }
+}
@@ -0,0 +1,37 @@
+package com.protei.benchmark;
+
+import com.protei.task.scheduler.JobInfo;
+import com.protei.task.scheduler.JobUtil;
+import com.protei.task.scheduler.SystemUserStatusUpdateJob;
+import org.openjdk.jmh.annotations.*;
+import org.quartz.JobDetail;
+import org.quartz.Trigger;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JobUtilBenchmark {
+    private JobInfo info;
+
+    @Setup
+    public void setUp() {
+        info = new JobInfo();
+        info.setUserId("123456");
+        info.setInitialOffsetMs(300000L);
+    }
+
+    @Benchmark
+    public JobDetail buildJobDetail() {
+        return JobUtil.buildJobDetail(SystemUserStatusUpdateJob.class, info);
+    }
+
+    @Benchmark
+    public Trigger buildTrigger() {
+        return JobUtil.buildTrigger(info);
+    }
+}
@@ -0,0 +1,70 @@
+package com.protei.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.protei.task.systemuser.SystemUser;
+import com.protei.task.systemuser.SystemUserView;
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A page of users serialized as entities, as views and as Smile views. Payload sizes are printed
+ * once per trial, since JMH only reports time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+    private static final SystemUserStatus[] STATUSES = SystemUserStatus.values();
+
+    @Param({"100", "1000"})
+    public int size;
+
+    private ObjectMapper objectMapper;
+    private ObjectMapper smileMapper;
+    private List<SystemUser> users;
+    private List<SystemUserView> views;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        smileMapper = Jackson2ObjectMapperBuilder.smile()
+                .factory(SmileFactory.builder().enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES).build())
+                .build();
+        users = new ArrayList<>(size);
+        views = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            SystemUser user = new SystemUser(i, "User " + i, "user" + i + "@example.com",
+                    String.format("+7916%07d", i), STATUSES[i % STATUSES.length], null, 0L);
+            users.add(user);
+            views.add(SystemUserView.of(user));
+        }
+        System.out.printf("%nPayload of %d users: JSON %d bytes, Smile %d bytes%n", size,
+                serializeViews().length, serializeViewsToSmile().length);
+    }
+
+    @Benchmark
+    public byte[] serializeUsers() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(users);
+    }
+
+    @Benchmark
+    public byte[] serializeViews() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(views);
+    }
+
+    @Benchmark
+    public byte[] serializeViewsToSmile() throws JsonProcessingException {
+        return smileMapper.writeValueAsBytes(views);
+    }
+}
@@ -0,0 +1,88 @@
+package com.protei.benchmark;
+
+import com.protei.task.scheduler.ExpiredUsersHandler;
+import com.protei.task.scheduler.PresenceExpiryProperties;
+import com.protei.task.scheduler.TimingWheelExpiryEngine;
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The whole ONLINE to AWAY to OFFLINE lifecycle of {@code users} concurrent timers on the timing
+ * wheel engine. ONLINE deadlines are spread over {@code spreadMs}; each expired ONLINE user gets
+ * its AWAY deadline {@code awayMs} later, armed from the expiry handler on the engine thread as
+ * the service does. The score is the time until every user has gone OFFLINE, so the overhead of
+ * the engine is what it adds to {@code spreadMs + awayMs} (plus up to flush-window-ms per stage).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class PresenceLifecycleBenchmark {
+
+    @Param({"1000000"})
+    public int users;
+
+    @Param({"2000"})
+    public long spreadMs;
+
+    @Param({"1000"})
+    public long awayMs;
+
+    private TimingWheelExpiryEngine expiryEngine;
+    private CountDownLatch offline;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        Logging.quiet();
+        PresenceExpiryProperties properties = new PresenceExpiryProperties();
+        properties.setTickMs(10L);
+        properties.setFlushWindowMs(100L);
+        properties.setInitialCapacity(users);
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("expiredUsersHandler", (ExpiredUsersHandler) this::onExpired);
+        expiryEngine = new TimingWheelExpiryEngine(properties,
+                beanFactory.getBeanProvider(ExpiredUsersHandler.class), new SimpleMeterRegistry());
+        offline = new CountDownLatch(users);
+        long[] userIds = new long[users];
+        long[] delaysMs = new long[users];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < users; i++) {
+            userIds[i] = i + 1L;
+            delaysMs[i] = random.nextLong(spreadMs);
+        }
+        expiryEngine.arm(userIds, SystemUserStatus.ONLINE, delaysMs);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        expiryEngine.stop();
+    }
+
+    @Benchmark
+    public long lifecycle() throws InterruptedException {
+        expiryEngine.start();
+        offline.await();
+        return expiryEngine.getPendingTimerCount();
+    }
+
+    private void onExpired(SystemUserStatus status, long[] userIds) {
+        if (status == SystemUserStatus.ONLINE) {
+            long[] delaysMs = new long[userIds.length];
+            Arrays.fill(delaysMs, awayMs);
+            expiryEngine.armIfAbsent(userIds, SystemUserStatus.AWAY, delaysMs);
+        } else {
+            for (int i = 0; i < userIds.length; i++) {
+                offline.countDown();
+            }
+        }
+    }
+}
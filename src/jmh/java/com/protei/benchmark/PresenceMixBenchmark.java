@@ -0,0 +1,97 @@
+package com.protei.benchmark;
+
+import com.protei.task.TaskApplication;
+import com.protei.task.systemuser.SystemUser;
+import com.protei.task.systemuser.SystemUserService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Register, heartbeat and read running concurrently against the whole service. Uses an in-memory
+ * H2 database by default; pass -Dbenchmark.datasource.url (with .username and .password) to run
+ * against a scratch PostgreSQL database instead. The schema is recreated unless
+ * -Dbenchmark.ddl-auto says otherwise. The partitioned presence history needs PostgreSQL, so it is
+ * off unless -Dbenchmark.presence-history=true.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PresenceMixBenchmark {
+    private static final int PRELOADED_USERS = 10000;
+
+    private final AtomicLong registered = new AtomicLong();
+    private ConfigurableApplicationContext context;
+    private SystemUserService systemUserService;
+    private long[] userIds;
+
+    @Setup
+    public void setUp() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("spring.datasource.url", System.getProperty("benchmark.datasource.url",
+                "jdbc:h2:mem:benchmark;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1"));
+        properties.put("spring.datasource.username", System.getProperty("benchmark.datasource.username", "sa"));
+        properties.put("spring.datasource.password", System.getProperty("benchmark.datasource.password", ""));
+        properties.put("spring.jpa.hibernate.ddl-auto", System.getProperty("benchmark.ddl-auto", "create-drop"));
+        properties.put("presence.history.enabled", System.getProperty("benchmark.presence-history", "false"));
+        properties.put("logging.level.root", "WARN");
+        SpringApplication application = new SpringApplication(TaskApplication.class);
+        application.setWebApplicationType(WebApplicationType.NONE);
+        application.setDefaultProperties(properties);
+        context = application.run();
+        systemUserService = context.getBean(SystemUserService.class);
+        userIds = new long[PRELOADED_USERS];
+        for (int i = 0; i < PRELOADED_USERS; i++) {
+            userIds[i] = register().getId();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @Group("mix")
+    @GroupThreads(1)
+    public SystemUser registerUser() {
+        return register();
+    }
+
+    @Benchmark
+    @Group("mix")
+    @GroupThreads(4)
+    public void heartbeat() {
+        systemUserService.heartbeat(randomUserId());
+    }
+
+    @Benchmark
+    @Group("mix")
+    @GroupThreads(3)
+    public SystemUser readUser() {
+        return systemUserService.getSystemUserById(randomUserId());
+    }
+
+    private SystemUser register() {
+        long n = registered.incrementAndGet();
+        SystemUser user = new SystemUser();
+        user.setName("Benchmark " + n);
+        user.setEmail("benchmark" + n + "@example.com");
+        user.setPhoneNumber(String.format("+7916%07d", n));
+        return systemUserService.addNewSystemUser(user);
+    }
+
+    private long randomUserId() {
+        return userIds[ThreadLocalRandom.current().nextInt(userIds.length)];
+    }
+}
@@ -0,0 +1,61 @@
+package com.protei.benchmark;
+
+import com.protei.task.systemuser.PhoneNumberNormalizer;
+import com.protei.task.systemuser.PhoneNumberProperties;
+import com.protei.task.systemuser.SystemUserValidator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationBenchmark {
+    private SystemUserValidator validator;
+    private long uncachedNumber;
+
+    @Setup
+    public void setUp() {
+        validator = new SystemUserValidator(new PhoneNumberNormalizer(new PhoneNumberProperties()),
+                new SimpleMeterRegistry());
+    }
+
+    @Benchmark
+    public boolean validPhoneNumber() {
+        return validator.isPhoneNumberInvalid("+7 (916) 123-45-67");
+    }
+
+    @Benchmark
+    public boolean invalidPhoneNumber() {
+        return validator.isPhoneNumberInvalid("+7 916 12");
+    }
+
+    @Benchmark
+    public String uncachedPhoneNumber() {
+        return validator.normalizePhoneNumber(String.format("+7916%07d", uncachedNumber++ % 10_000_000));
+    }
+
+    @Benchmark
+    public boolean validEmail() {
+        return validator.isEmailInvalid("john.doe@example.com");
+    }
+
+    @Benchmark
+    public boolean invalidEmail() {
+        return validator.isEmailInvalid("john.doe@@example");
+    }
+
+    @Benchmark
+    public String normalizeEmail() {
+        return validator.normalizeEmail("  John.Doe@Example.COM ");
+    }
+
+    @Benchmark
+    public void validateName() {
+        validator.validateName("John Doe");
+    }
+}
@@ -0,0 +1,156 @@
+package com.protei.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency of every operation in an HdrHistogram {@link Recorder}, in microseconds from the time the
+ * request was due rather than the time it was sent, so requests held back by a slow server are
+ * charged for the wait. Latency of failed requests is not recorded; they are counted as errors.
+ */
+final class LatencyReport {
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(5);
+    private static final double[] PERCENTILES = {50.0, 90.0, 99.0, 99.9};
+    private static final String[] PERCENTILE_KEYS = {"p50Ms", "p90Ms", "p99Ms", "p999Ms"};
+
+    private final Map<Operation, Recorder> recorders = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+    private final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    LatencyReport() {
+        for (Operation operation : Operation.values()) {
+            recorders.put(operation, new Recorder(HIGHEST_TRACKABLE_MICROS, 3));
+            errors.put(operation, new LongAdder());
+        }
+    }
+
+    void recordSuccess(Operation operation, long latencyNanos) {
+        long micros = Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos), HIGHEST_TRACKABLE_MICROS);
+        recorders.get(operation).recordValue(Math.max(micros, 1L));
+    }
+
+    void recordError(Operation operation) {
+        errors.get(operation).increment();
+    }
+
+    /**
+     * Drops everything recorded so far, at the end of the warm-up.
+     */
+    void reset() {
+        for (Operation operation : Operation.values()) {
+            recorders.get(operation).getIntervalHistogram();
+            errors.get(operation).reset();
+        }
+    }
+
+    /**
+     * Summarizes what was recorded since the last reset over measuredSeconds.
+     */
+    Map<String, Object> summarize(LoadTestOptions options, double measuredSeconds) {
+        Map<String, Object> operations = new LinkedHashMap<>();
+        Histogram total = new Histogram(HIGHEST_TRACKABLE_MICROS, 3);
+        long totalErrors = 0;
+        for (Operation operation : Operation.values()) {
+            Histogram histogram = recorders.get(operation).getIntervalHistogram();
+            long operationErrors = errors.get(operation).sum();
+            if (histogram.getTotalCount() == 0 && operationErrors == 0) {
+                continue;
+            }
+            total.add(histogram);
+            totalErrors += operationErrors;
+            operations.put(operation.getKey(), summarize(histogram, operationErrors, measuredSeconds));
+        }
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("options", options.getValues());
+        summary.put("targetRate", options.getRate());
+        summary.put("measuredSeconds", measuredSeconds);
+        summary.put("total", summarize(total, totalErrors, measuredSeconds));
+        summary.put("operations", operations);
+        return summary;
+    }
+
+    void write(Map<String, Object> summary, Path path) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        objectMapper.writeValue(path.toFile(), summary);
+    }
+
+    @SuppressWarnings("unchecked")
+    void print(Map<String, Object> summary, PrintStream out) {
+        out.printf("%-10s %10s %8s %10s %9s %9s %9s %9s %9s%n",
+                "operation", "count", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        Map<String, Object> operations = (Map<String, Object>) summary.get("operations");
+        for (Map.Entry<String, Object> operation : operations.entrySet()) {
+            printRow(out, operation.getKey(), (Map<String, Object>) operation.getValue());
+        }
+        printRow(out, "total", (Map<String, Object>) summary.get("total"));
+    }
+
+    /**
+     * Prints throughput and p99 of every operation next to those of an earlier report.
+     */
+    @SuppressWarnings("unchecked")
+    void printComparison(Map<String, Object> summary, Path baselinePath, PrintStream out) throws IOException {
+        JsonNode baseline = objectMapper.readTree(baselinePath.toFile());
+        out.printf("%nCompared with %s%n", baselinePath);
+        out.printf("%-10s %12s %12s %8s %12s %12s %8s%n",
+                "operation", "base req/s", "req/s", "change", "base p99 ms", "p99 ms", "change");
+        Map<String, Object> operations = new LinkedHashMap<>((Map<String, Object>) summary.get("operations"));
+        operations.put("total", summary.get("total"));
+        for (Map.Entry<String, Object> operation : operations.entrySet()) {
+            JsonNode base = "total".equals(operation.getKey())
+                    ? baseline.path("total") : baseline.path("operations").path(operation.getKey());
+            if (base.isMissingNode()) {
+                continue;
+            }
+            Map<String, Object> current = (Map<String, Object>) operation.getValue();
+            double baseThroughput = base.path("throughput").asDouble();
+            double throughput = (Double) current.get("throughput");
+            double baseP99 = base.path("p99Ms").asDouble();
+            double p99 = (Double) current.get("p99Ms");
+            out.printf("%-10s %12.1f %12.1f %7.1f%% %12.3f %12.3f %7.1f%%%n", operation.getKey(),
+                    baseThroughput, throughput, change(baseThroughput, throughput), baseP99, p99, change(baseP99, p99));
+        }
+    }
+
+    private static Map<String, Object> summarize(Histogram histogram, long errorCount, double measuredSeconds) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", histogram.getTotalCount());
+        summary.put("errors", errorCount);
+        summary.put("throughput", (histogram.getTotalCount() + errorCount) / measuredSeconds);
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            summary.put(PERCENTILE_KEYS[i], toMillis(histogram.getValueAtPercentile(PERCENTILES[i])));
+        }
+        summary.put("maxMs", toMillis(histogram.getMaxValue()));
+        return summary;
+    }
+
+    private static void printRow(PrintStream out, String name, Map<String, Object> row) {
+        out.printf("%-10s %10d %8d %10.1f %9.3f %9.3f %9.3f %9.3f %9.3f%n", name,
+                (Long) row.get("count"), (Long) row.get("errors"), (Double) row.get("throughput"),
+                (Double) row.get("p50Ms"), (Double) row.get("p90Ms"), (Double) row.get("p99Ms"),
+                (Double) row.get("p999Ms"), (Double) row.get("maxMs"));
+    }
+
+    private static double toMillis(long micros) {
+        return micros / 1000.0;
+    }
+
+    private static double change(double base, double value) {
+        return base == 0.0 ? 0.0 : (value - base) * 100.0 / base;
+    }
+}
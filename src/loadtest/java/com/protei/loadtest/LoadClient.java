@@ -0,0 +1,148 @@
+package com.protei.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Builds and sends the requests of every {@link Operation} against SystemUserController. Users
+ * registered by a run get emails with a run-specific prefix and phone numbers from a random
+ * mobile code, so runs against the same database rarely collide.
+ */
+final class LoadClient {
+    private static final String[] STATUSES = {"ONLINE", "AWAY", "OFFLINE"};
+    private static final String JSON = "application/json";
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    private static final int STATUS_BULK_SIZE = 1000;
+
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String baseUrl;
+    private final int listLimit;
+    private final String runId;
+    private final int phoneCode;
+    private final AtomicLong registered;
+
+    private long[] userIds = new long[0];
+
+    LoadClient(String baseUrl, int listLimit) {
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        this.baseUrl = baseUrl;
+        this.listLimit = listLimit;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        this.runId = Long.toString(System.currentTimeMillis(), 36);
+        this.phoneCode = 900 + random.nextInt(100);
+        this.registered = new AtomicLong(random.nextInt(5_000_000));
+    }
+
+    void setUserIds(long[] userIds) {
+        this.userIds = userIds;
+    }
+
+    CompletableFuture<HttpResponse<String>> send(Operation operation) {
+        return httpClient.sendAsync(request(operation), HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Id of the user created by a successful registration.
+     */
+    long readId(HttpResponse<String> response) {
+        try {
+            return objectMapper.readTree(response.body()).path("id").asLong();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Puts users ONLINE through the bulk status endpoint, so their AWAY timers are armed.
+     */
+    void setOnline(long[] ids) throws IOException, InterruptedException {
+        for (int from = 0; from < ids.length; from += STATUS_BULK_SIZE) {
+            List<Map<String, Object>> updates = new ArrayList<>();
+            for (int i = from; i < Math.min(from + STATUS_BULK_SIZE, ids.length); i++) {
+                Map<String, Object> update = new LinkedHashMap<>();
+                update.put("id", ids[i]);
+                update.put("status", "ONLINE");
+                updates.add(update);
+            }
+            HttpRequest request = builder("api/user/status/bulk")
+                    .header("Content-Type", JSON)
+                    .PUT(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(updates)))
+                    .build();
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (!isSuccess(response)) {
+                throw new IllegalStateException("Bulk status update failed: " + response.statusCode() + " " + response.body());
+            }
+        }
+    }
+
+    static boolean isSuccess(HttpResponse<?> response) {
+        return response.statusCode() / 100 == 2;
+    }
+
+    private HttpRequest request(Operation operation) {
+        switch (operation) {
+            case REGISTER:
+                return builder("api/user")
+                        .header("Content-Type", JSON)
+                        .POST(HttpRequest.BodyPublishers.ofString(registration()))
+                        .build();
+            case HEARTBEAT:
+                return builder("api/user/" + randomUserId() + "/heartbeat")
+                        .POST(HttpRequest.BodyPublishers.noBody())
+                        .build();
+            case STATUS:
+                String status = STATUSES[ThreadLocalRandom.current().nextInt(STATUSES.length)];
+                return builder("api/user/" + randomUserId() + "/status?userStatus=" + status)
+                        .PUT(HttpRequest.BodyPublishers.noBody())
+                        .build();
+            case READ:
+                return builder("api/user/" + randomUserId()).GET().build();
+            case LIST:
+                return builder("api/user?after=" + (randomUserId() - 1) + "&limit=" + listLimit).GET().build();
+            default:
+                throw new IllegalArgumentException("Unknown operation: " + operation);
+        }
+    }
+
+    private String registration() {
+        long n = registered.incrementAndGet();
+        Map<String, String> user = new LinkedHashMap<>();
+        // Names are at most 20 characters
+        user.put("name", "Load " + n);
+        user.put("email", "load-" + runId + "-" + n + "@example.com");
+        user.put("phoneNumber", String.format("+7%d%07d", phoneCode, n % 10_000_000));
+        try {
+            return objectMapper.writeValueAsString(user);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private HttpRequest.Builder builder(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + "/" + path))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Accept", JSON);
+    }
+
+    private long randomUserId() {
+        return userIds[ThreadLocalRandom.current().nextInt(userIds.length)];
+    }
+}
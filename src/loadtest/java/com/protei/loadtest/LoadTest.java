@@ -0,0 +1,223 @@
+package com.protei.loadtest;
+
+import com.protei.task.TaskApplication;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load generator for SystemUserController. Registers and puts ONLINE a pool of users,
+ * so their AWAY timers are pending, then sends a weighted mix of operations at a fixed rate, with
+ * optional registration bursts and heartbeat storms on top. Requests are due on a fixed schedule
+ * whatever the server does; at most max-in-flight are outstanding, and latency counts from the
+ * due time. Results of the warm-up are dropped, the rest is printed and written as JSON, and
+ * compared with a baseline report if one is given.
+ *
+ * <p>Without base-url the application is started in this JVM on a random port, on an in-memory
+ * H2 database or on jdbc-url, e.g. a local PostgreSQL scratch database. Client and server then
+ * share the machine, so only compare reports taken the same way.
+ */
+public final class LoadTest {
+    private static final long DRAIN_TIMEOUT_SECONDS = 30L;
+
+    private final LoadTestOptions options;
+    private final LoadClient client;
+    private final LatencyReport report = new LatencyReport();
+    private final Semaphore inFlight;
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+
+    private LoadTest(LoadTestOptions options, String baseUrl) {
+        this.options = options;
+        this.client = new LoadClient(baseUrl, options.getListLimit());
+        this.inFlight = new Semaphore(options.getMaxInFlight());
+        this.operations = options.getMix().keySet().toArray(new Operation[0]);
+        this.cumulativeWeights = new int[operations.length];
+        int sum = 0;
+        for (int i = 0; i < operations.length; i++) {
+            sum += options.getMix().get(operations[i]);
+            cumulativeWeights[i] = sum;
+        }
+        if (sum <= 0) {
+            throw new IllegalArgumentException("Operation mix has no weight");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        ConfigurableApplicationContext context = null;
+        String baseUrl = options.getBaseUrl();
+        if (options.isEmbedded()) {
+            context = startApplication(options);
+            baseUrl = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+        }
+        try {
+            new LoadTest(options, baseUrl).run();
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+        }
+    }
+
+    private void run() throws Exception {
+        long start = System.nanoTime();
+        long[] userIds = registerUsers(options.getUsers());
+        client.setUserIds(userIds);
+        client.setOnline(userIds);
+        System.out.printf("Registered %d users and put them ONLINE in %d ms%n",
+                userIds.length, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        double measuredSeconds = generate();
+        Map<String, Object> summary = report.summarize(options, measuredSeconds);
+        report.print(summary, System.out);
+        report.write(summary, options.getReport());
+        System.out.printf("Report written to %s%n", options.getReport());
+        if (options.getBaseline() != null) {
+            report.printComparison(summary, options.getBaseline(), System.out);
+        }
+    }
+
+    /**
+     * Registers users through the API, at most max-in-flight at a time.
+     */
+    private long[] registerUsers(int count) throws InterruptedException {
+        List<Long> userIds = new ArrayList<>(count);
+        AtomicInteger failed = new AtomicInteger();
+        AtomicReference<String> firstFailure = new AtomicReference<>();
+        for (int i = 0; i < count; i++) {
+            inFlight.acquire();
+            client.send(Operation.REGISTER).whenComplete((response, error) -> {
+                if (error == null && LoadClient.isSuccess(response)) {
+                    long userId = client.readId(response);
+                    synchronized (userIds) {
+                        userIds.add(userId);
+                    }
+                } else {
+                    failed.incrementAndGet();
+                    firstFailure.compareAndSet(null, error != null
+                            ? error.toString() : response.statusCode() + " " + response.body());
+                }
+                inFlight.release();
+            });
+        }
+        drain();
+        if (userIds.isEmpty()) {
+            throw new IllegalStateException("No user could be registered: " + firstFailure.get());
+        }
+        if (failed.get() > 0) {
+            System.out.printf("%d of %d registrations failed, the first with %s%n",
+                    failed.get(), count, firstFailure.get());
+        }
+        return userIds.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * Sends the mix for warmup-seconds plus duration-seconds and returns the measured seconds.
+     */
+    private double generate() throws InterruptedException {
+        long periodNanos = TimeUnit.SECONDS.toNanos(1) / options.getRate();
+        long burstIntervalNanos = TimeUnit.SECONDS.toNanos(options.getRegisterBurstIntervalSeconds());
+        long stormIntervalNanos = TimeUnit.SECONDS.toNanos(options.getHeartbeatStormIntervalSeconds());
+        long start = System.nanoTime();
+        long measureStart = start + TimeUnit.SECONDS.toNanos(options.getWarmupSeconds());
+        long end = measureStart + TimeUnit.SECONDS.toNanos(options.getDurationSeconds());
+        long nextBurst = start + burstIntervalNanos;
+        long nextStorm = start + stormIntervalNanos;
+        boolean measuring = false;
+        System.out.printf("Warming up for %d s, then measuring for %d s at %d requests/s%n",
+                options.getWarmupSeconds(), options.getDurationSeconds(), options.getRate());
+        for (long due = start; due < end; due += periodNanos) {
+            if (!measuring && due >= measureStart) {
+                report.reset();
+                measuring = true;
+            }
+            if (options.getRegisterBurst() > 0 && due >= nextBurst) {
+                for (int i = 0; i < options.getRegisterBurst(); i++) {
+                    dispatch(Operation.REGISTER, nextBurst);
+                }
+                nextBurst += burstIntervalNanos;
+            }
+            if (options.getHeartbeatStorm() > 0 && due >= nextStorm) {
+                for (int i = 0; i < options.getHeartbeatStorm(); i++) {
+                    dispatch(Operation.HEARTBEAT, nextStorm);
+                }
+                nextStorm += stormIntervalNanos;
+            }
+            long waitNanos = due - System.nanoTime();
+            if (waitNanos > 0) {
+                LockSupport.parkNanos(waitNanos);
+            }
+            dispatch(nextOperation(), due);
+        }
+        drain();
+        return (end - measureStart) / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    private void dispatch(Operation operation, long dueNanos) throws InterruptedException {
+        inFlight.acquire();
+        CompletableFuture<HttpResponse<String>> response;
+        try {
+            response = client.send(operation);
+        } catch (RuntimeException e) {
+            inFlight.release();
+            report.recordError(operation);
+            return;
+        }
+        response.whenComplete((result, error) -> {
+            if (error == null && LoadClient.isSuccess(result)) {
+                report.recordSuccess(operation, System.nanoTime() - dueNanos);
+            } else {
+                report.recordError(operation);
+            }
+            inFlight.release();
+        });
+    }
+
+    private Operation nextOperation() {
+        int value = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (value < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+
+    private void drain() throws InterruptedException {
+        if (!inFlight.tryAcquire(options.getMaxInFlight(), DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Requests still in flight after " + DRAIN_TIMEOUT_SECONDS + " s");
+        }
+        inFlight.release(options.getMaxInFlight());
+    }
+
+    private static ConfigurableApplicationContext startApplication(LoadTestOptions options) {
+        boolean h2 = options.getJdbcUrl().startsWith("jdbc:h2:");
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("server.port", "0");
+        properties.put("spring.datasource.url", options.getJdbcUrl());
+        properties.put("spring.datasource.username", options.getJdbcUsername());
+        properties.put("spring.datasource.password", options.getJdbcPassword());
+        properties.put("spring.jpa.hibernate.ddl-auto", h2 ? "create-drop" : "update");
+        // The partitioned presence history needs PostgreSQL
+        properties.put("presence.history.enabled", String.valueOf(!h2));
+        properties.put("logging.level.root", "WARN");
+        properties.putAll(options.getApplicationProperties());
+        List<String> args = new ArrayList<>();
+        properties.forEach((name, value) -> args.add("--" + name + "=" + value));
+        return SpringApplication.run(TaskApplication.class, args.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,135 @@
+package com.protei.loadtest;
+
+import lombok.Getter;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Options given as {@code name=value} or {@code --name=value}. Names with a dot, such as
+ * {@code presence.lifecycle.away-after-ms=60000}, are passed to the embedded application.
+ */
+@Getter
+final class LoadTestOptions {
+    private static final String DEFAULT_MIX = "heartbeat:60,read:25,list:5,status:5,register:5";
+    private static final String H2_URL = "jdbc:h2:mem:loadtest;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    private final Map<String, String> values = new LinkedHashMap<>();
+    private final Map<String, Object> applicationProperties = new LinkedHashMap<>();
+    private final Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+
+    private String baseUrl;
+    private String jdbcUrl = H2_URL;
+    private String jdbcUsername = "sa";
+    private String jdbcPassword = "";
+    private int users = 10000;
+    private int rate = 500;
+    private int warmupSeconds = 10;
+    private int durationSeconds = 60;
+    private int listLimit = 100;
+    private int registerBurst;
+    private int registerBurstIntervalSeconds = 10;
+    private int heartbeatStorm;
+    private int heartbeatStormIntervalSeconds = 30;
+    private int maxInFlight = 256;
+    private Path report;
+    private Path baseline;
+
+    private LoadTestOptions() {
+    }
+
+    static LoadTestOptions parse(String[] args) {
+        LoadTestOptions options = new LoadTestOptions();
+        String mix = DEFAULT_MIX;
+        for (String arg : args) {
+            String option = arg.startsWith("--") ? arg.substring(2) : arg;
+            int separator = option.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected name=value: " + arg);
+            }
+            String name = option.substring(0, separator);
+            String value = option.substring(separator + 1);
+            options.values.put(name, value);
+            if (name.contains(".")) {
+                options.applicationProperties.put(name, value);
+                continue;
+            }
+            switch (name) {
+                case "base-url":
+                    options.baseUrl = value.endsWith("/") ? value.substring(0, value.length() - 1) : value;
+                    break;
+                case "jdbc-url":
+                    options.jdbcUrl = value;
+                    break;
+                case "jdbc-username":
+                    options.jdbcUsername = value;
+                    break;
+                case "jdbc-password":
+                    options.jdbcPassword = value;
+                    break;
+                case "users":
+                    options.users = Integer.parseInt(value);
+                    break;
+                case "rate":
+                    options.rate = Integer.parseInt(value);
+                    break;
+                case "warmup-seconds":
+                    options.warmupSeconds = Integer.parseInt(value);
+                    break;
+                case "duration-seconds":
+                    options.durationSeconds = Integer.parseInt(value);
+                    break;
+                case "list-limit":
+                    options.listLimit = Integer.parseInt(value);
+                    break;
+                case "register-burst":
+                    options.registerBurst = Integer.parseInt(value);
+                    break;
+                case "register-burst-interval-seconds":
+                    options.registerBurstIntervalSeconds = Integer.parseInt(value);
+                    break;
+                case "heartbeat-storm":
+                    options.heartbeatStorm = Integer.parseInt(value);
+                    break;
+                case "heartbeat-storm-interval-seconds":
+                    options.heartbeatStormIntervalSeconds = Integer.parseInt(value);
+                    break;
+                case "max-in-flight":
+                    options.maxInFlight = Integer.parseInt(value);
+                    break;
+                case "mix":
+                    mix = value;
+                    break;
+                case "report":
+                    options.report = Paths.get(value);
+                    break;
+                case "baseline":
+                    options.baseline = Paths.get(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + name);
+            }
+        }
+        for (String weight : mix.split(",")) {
+            String[] parts = weight.split(":");
+            options.mix.put(Operation.of(parts[0]), Integer.parseInt(parts[1].trim()));
+        }
+        if (options.users <= 0 || options.rate <= 0 || options.durationSeconds <= 0 || options.maxInFlight <= 0) {
+            throw new IllegalArgumentException("users, rate, duration-seconds and max-in-flight must be positive");
+        }
+        if (options.report == null) {
+            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+            options.report = Paths.get("target", "loadtest", "report-" + timestamp + ".json");
+        }
+        return options;
+    }
+
+    boolean isEmbedded() {
+        return baseUrl == null;
+    }
+}
@@ -0,0 +1,19 @@
+package com.protei.loadtest;
+
+import java.util.Locale;
+
+enum Operation {
+    REGISTER,
+    HEARTBEAT,
+    STATUS,
+    READ,
+    LIST;
+
+    String getKey() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    static Operation of(String key) {
+        return valueOf(key.trim().toUpperCase(Locale.ROOT));
+    }
+}
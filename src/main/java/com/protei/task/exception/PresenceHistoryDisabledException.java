@@ -0,0 +1,11 @@
+package com.protei.task.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.NOT_IMPLEMENTED)
+public class PresenceHistoryDisabledException extends RuntimeException {
+    public PresenceHistoryDisabledException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package com.protei.task.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.TOO_MANY_REQUESTS)
+public class TooManyStatusUpdatesException extends RuntimeException {
+    public TooManyStatusUpdatesException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package com.protei.task.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.CONFLICT)
+public class UserStatusConflictException extends RuntimeException {
+    public UserStatusConflictException(String message) {
+        super(message);
+    }
+}
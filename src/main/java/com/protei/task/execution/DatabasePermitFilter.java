@@ -0,0 +1,61 @@
+package com.protei.task.execution;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Runs API requests under a {@link DatabasePermits} permit and answers 503 when none frees up
+ * within permit-timeout-ms. Actuator endpoints are not limited. The permit is released when the
+ * request thread leaves the filter, so asynchronous work that outlives it, such as the body of
+ * the NDJSON export, takes a permit of its own; SSE subscriptions hold none while they are open.
+ */
+@Component
+@ConditionalOnProperty(name = "execution.mode", havingValue = "virtual")
+public class DatabasePermitFilter extends OncePerRequestFilter {
+    private static final String API_PATH = "/api/";
+    private static final String NO_PERMIT = "Too many requests in progress, try again later";
+
+    private final DatabasePermits permits;
+    private final long permitTimeoutMs;
+
+    @Autowired
+    public DatabasePermitFilter(DatabasePermits permits, ExecutionProperties properties) {
+        this.permits = permits;
+        this.permitTimeoutMs = properties.getPermitTimeoutMs();
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith(API_PATH);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        try {
+            if (!permits.tryAcquire(permitTimeoutMs)) {
+                response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), NO_PERMIT);
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), NO_PERMIT);
+            return;
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            permits.release();
+        }
+    }
+}
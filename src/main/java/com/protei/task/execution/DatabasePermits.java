@@ -0,0 +1,93 @@
+package com.protei.task.execution;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds the requests and expiry jobs running at once in the virtual execution mode. Platform
+ * thread pools used to be that bound; with a thread per task, the connection pool would be the
+ * only one, and every task beyond it would hold a thread parked in the pool's wait queue. The
+ * permit count defaults to the maximum size of the connection pool minus reserved-connections,
+ * the connections background threads take without a permit: the presence store flusher, the
+ * history writer, the presence timer flusher, the expiry engine's ticker or poller and the
+ * scheduled tasks such as the counter reconcile, one each. Tasks holding every permit then still
+ * leave those threads a connection. A database-permits set explicitly is used as is.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "execution.mode", havingValue = "virtual")
+public class DatabasePermits {
+    private static final String POOL_SIZE_UNKNOWN =
+            "Set spring.datasource.hikari.maximum-pool-size or execution.database-permits";
+    private static final String POOL_TOO_SMALL =
+            "spring.datasource.hikari.maximum-pool-size %d leaves no connection beyond the %d reserved ones";
+
+    private final Semaphore permits;
+
+    @Autowired
+    public DatabasePermits(DataSource dataSource, ExecutionProperties properties, MeterRegistry meterRegistry) {
+        int count = properties.getDatabasePermits() > 0
+                ? properties.getDatabasePermits()
+                : unreservedConnections(dataSource, properties.getReservedConnections());
+        this.permits = new Semaphore(count, true);
+        Gauge.builder("execution.database.permits.available", permits, Semaphore::availablePermits)
+                .register(meterRegistry);
+        log.info("Limiting database work to {} concurrent tasks", count);
+    }
+
+    public boolean tryAcquire(long timeoutMs) throws InterruptedException {
+        return permits.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    /**
+     * Runs the task under a permit, waiting for one as long as it takes.
+     */
+    public void run(Runnable task) {
+        permits.acquireUninterruptibly();
+        try {
+            task.run();
+        } finally {
+            permits.release();
+        }
+    }
+
+    public Executor limit(Executor executor) {
+        return runnable -> executor.execute(() -> run(runnable));
+    }
+
+    private static int unreservedConnections(DataSource dataSource, int reservedConnections) {
+        int size = maximumPoolSize(dataSource);
+        if (size <= reservedConnections) {
+            throw new IllegalStateException(String.format(POOL_TOO_SMALL, size, reservedConnections));
+        }
+        return size - reservedConnections;
+    }
+
+    private static int maximumPoolSize(DataSource dataSource) {
+        int size;
+        try {
+            size = dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize();
+        } catch (SQLException e) {
+            throw new IllegalStateException(POOL_SIZE_UNKNOWN, e);
+        }
+        if (size <= 0) {
+            throw new IllegalStateException(POOL_SIZE_UNKNOWN);
+        }
+        return size;
+    }
+}
@@ -0,0 +1,17 @@
+package com.protei.task.execution;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "execution")
+public class ExecutionProperties {
+    private String mode = "platform";
+    private int databasePermits = 0;
+    private int reservedConnections = 5;
+    private long permitTimeoutMs = 5000L;
+}
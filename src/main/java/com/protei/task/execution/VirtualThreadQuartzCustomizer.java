@@ -0,0 +1,27 @@
+package com.protei.task.execution;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.quartz.SchedulerFactoryBeanCustomizer;
+import org.springframework.scheduling.quartz.SchedulerFactoryBean;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs each Quartz job on its own virtual thread under a {@link DatabasePermits} permit, in
+ * place of Quartz's fixed worker pool.
+ */
+@Component
+@ConditionalOnProperty(name = "execution.mode", havingValue = "virtual")
+public class VirtualThreadQuartzCustomizer implements SchedulerFactoryBeanCustomizer {
+    private final DatabasePermits permits;
+
+    @Autowired
+    public VirtualThreadQuartzCustomizer(DatabasePermits permits) {
+        this.permits = permits;
+    }
+
+    @Override
+    public void customize(SchedulerFactoryBean schedulerFactoryBean) {
+        schedulerFactoryBean.setTaskExecutor(permits.limit(VirtualThreads.executor("quartz-virtual-")));
+    }
+}
@@ -0,0 +1,19 @@
+package com.protei.task.execution;
+
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.stereotype.Component;
+
+/**
+ * Handles each request on its own virtual thread instead of Tomcat's worker pool.
+ */
+@Component
+@ConditionalOnProperty(name = "execution.mode", havingValue = "virtual")
+public class VirtualThreadTomcatCustomizer implements TomcatProtocolHandlerCustomizer<ProtocolHandler> {
+
+    @Override
+    public void customize(ProtocolHandler protocolHandler) {
+        protocolHandler.setExecutor(VirtualThreads.executor("http-virtual-"));
+    }
+}
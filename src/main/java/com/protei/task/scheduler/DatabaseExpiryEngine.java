@@ -0,0 +1,218 @@
+package com.protei.task.scheduler;
+
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps presence deadlines in the presence_deadline table, so they survive restarts and are shared
+ * by every node. Each node claims due rows of its own {@code user_id % node-count} partition with
+ * FOR UPDATE SKIP LOCKED, and rows that are overdue by more than takeover-ms are claimed by any
+ * node, so the partition of a dead node is still served. Claimed ids are handed to the
+ * {@link ExpiredUsersHandler} of the claiming node only, inside the claiming transaction: in this
+ * mode the presence store writes each transition through to system_user and publishes it to the
+ * other nodes, so the lifecycle transition and the timer of the next status commit together with
+ * the claim, or are claimed again on the next poll if the handler fails.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "presence.expiry.engine", havingValue = "database")
+public class DatabaseExpiryEngine implements PresenceExpiryEngine {
+    private static final String ARM =
+            "insert into presence_deadline (user_id, status, deadline) " +
+                    "values (?, ?, now() + ? * interval '1 millisecond') " +
+                    "on conflict (user_id) do update set status = excluded.status, deadline = excluded.deadline";
+    private static final String REARM =
+            "update presence_deadline set deadline = now() + ? * interval '1 millisecond' " +
+                    "where user_id = ? and status = ?";
+    private static final String ARM_ALL =
+            "insert into presence_deadline (user_id, status, deadline) " +
+                    "select user_id, ?, now() + delay_ms * interval '1 millisecond' " +
+                    "from unnest(?, ?) as d(user_id, delay_ms) " +
+                    "on conflict (user_id) do update set status = excluded.status, deadline = excluded.deadline";
+    private static final String ARM_IF_ABSENT =
+            "insert into presence_deadline (user_id, status, deadline) " +
+                    "select user_id, ?, now() + delay_ms * interval '1 millisecond' " +
+                    "from unnest(?, ?) as d(user_id, delay_ms) " +
+                    "on conflict (user_id) do nothing";
+    private static final String CANCEL = "delete from presence_deadline where user_id = ?";
+    private static final String CANCEL_ALL = "delete from presence_deadline where user_id = any(?)";
+    private static final String COUNT = "select count(*) from presence_deadline";
+    private static final String CLAIM =
+            "delete from presence_deadline where user_id in (" +
+                    "select user_id from presence_deadline where deadline <= now() " +
+                    "and (mod(user_id, ?) = ? or deadline <= now() - ? * interval '1 millisecond') " +
+                    "order by deadline limit ? for update skip locked) " +
+                    "returning user_id, status, deadline";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectProvider<ExpiredUsersHandler> handlerProvider;
+    private final Timer claimTimer;
+    private final Timer fireLagTimer;
+    private final long pollMs;
+    private final int nodeCount;
+    private final int nodeIndex;
+    private final long takeoverMs;
+    private final int batchSize;
+
+    private ScheduledExecutorService poller;
+
+    @Autowired
+    public DatabaseExpiryEngine(JdbcTemplate jdbcTemplate,
+                                PlatformTransactionManager transactionManager,
+                                PresenceExpiryProperties properties,
+                                ObjectProvider<ExpiredUsersHandler> handlerProvider,
+                                MeterRegistry meterRegistry) {
+        if (properties.getNodeIndex() < 0 || properties.getNodeIndex() >= properties.getNodeCount()) {
+            throw new IllegalArgumentException("Node index must be in [0, " + properties.getNodeCount() + "): "
+                    + properties.getNodeIndex());
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.handlerProvider = handlerProvider;
+        this.claimTimer = meterRegistry.timer("presence.expiry.claim");
+        this.fireLagTimer = meterRegistry.timer(FIRE_LAG_TIMER);
+        this.pollMs = properties.getPollMs();
+        this.nodeCount = properties.getNodeCount();
+        this.nodeIndex = properties.getNodeIndex();
+        this.takeoverMs = properties.getTakeoverMs();
+        this.batchSize = properties.getBatchSize();
+    }
+
+    @Override
+    public void arm(long userId, SystemUserStatus status, long delayMs) {
+        jdbcTemplate.update(ARM, userId, status.name(), delayMs);
+    }
+
+    @Override
+    public boolean rearm(long userId, SystemUserStatus status, long delayMs) {
+        return jdbcTemplate.update(REARM, delayMs, userId, status.name()) > 0;
+    }
+
+    @Override
+    public void arm(long[] userIds, SystemUserStatus status, long[] delaysMs) {
+        armAll(ARM_ALL, userIds, status, delaysMs);
+    }
+
+    @Override
+    public void armIfAbsent(long[] userIds, SystemUserStatus status, long[] delaysMs) {
+        armAll(ARM_IF_ABSENT, userIds, status, delaysMs);
+    }
+
+    @Override
+    public void cancel(long userId) {
+        jdbcTemplate.update(CANCEL, userId);
+    }
+
+    @Override
+    public void cancel(long[] userIds) {
+        jdbcTemplate.update(CANCEL_ALL, preparedStatement -> preparedStatement.setArray(1,
+                preparedStatement.getConnection().createArrayOf("bigint", toObjects(userIds))));
+    }
+
+    @Override
+    public long getPendingTimerCount() {
+        Long count = jdbcTemplate.queryForObject(COUNT, Long.class);
+        return count == null ? 0L : count;
+    }
+
+    @Override
+    public void start() {
+        log.info("Claiming presence deadlines of partition {} of {}", nodeIndex, nodeCount);
+        poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "presence-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(this::poll, pollMs, pollMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        if (poller != null) {
+            poller.shutdownNow();
+        }
+    }
+
+    private void poll() {
+        try {
+            int claimed;
+            do {
+                claimed = claim();
+                if (claimed > 0) {
+                    log.debug("Claimed {} expired presence deadlines", claimed);
+                }
+            } while (claimed == batchSize && !Thread.currentThread().isInterrupted());
+        } catch (RuntimeException e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    private void armAll(String sql, long[] userIds, SystemUserStatus status, long[] delaysMs) {
+        jdbcTemplate.update(sql, preparedStatement -> {
+            Connection connection = preparedStatement.getConnection();
+            preparedStatement.setString(1, status.name());
+            preparedStatement.setArray(2, connection.createArrayOf("bigint", toObjects(userIds)));
+            preparedStatement.setArray(3, connection.createArrayOf("bigint", toObjects(delaysMs)));
+        });
+    }
+
+    private int claim() {
+        long start = System.nanoTime();
+        List<Timestamp> deadlines = new ArrayList<>();
+        Integer count = transactionTemplate.execute(transactionStatus -> {
+            Map<SystemUserStatus, List<Long>> claimed = new EnumMap<>(SystemUserStatus.class);
+            jdbcTemplate.query(CLAIM, (RowCallbackHandler) resultSet -> {
+                claimed.computeIfAbsent(SystemUserStatus.valueOf(resultSet.getString(2)), status -> new ArrayList<>())
+                        .add(resultSet.getLong(1));
+                deadlines.add(resultSet.getTimestamp(3));
+            }, nodeCount, nodeIndex, takeoverMs, batchSize);
+            for (Map.Entry<SystemUserStatus, List<Long>> group : claimed.entrySet()) {
+                handlerProvider.getObject().onExpired(group.getKey(), toPrimitives(group.getValue()));
+            }
+            return deadlines.size();
+        });
+        claimTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        long nowMs = System.currentTimeMillis();
+        for (Timestamp deadline : deadlines) {
+            fireLagTimer.record(Math.max(nowMs - deadline.getTime(), 0L), TimeUnit.MILLISECONDS);
+        }
+        return count == null ? 0 : count;
+    }
+
+    private static Long[] toObjects(long[] values) {
+        Long[] objects = new Long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            objects[i] = values[i];
+        }
+        return objects;
+    }
+
+    private static long[] toPrimitives(List<Long> values) {
+        long[] primitives = new long[values.size()];
+        for (int i = 0; i < primitives.length; i++) {
+            primitives[i] = values.get(i);
+        }
+        return primitives;
+    }
+}
@@ -0,0 +1,10 @@
+package com.protei.task.scheduler;
+
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
+
+public interface ExpiredUsersHandler {
+    /**
+     * Failures are thrown to the engine, which decides whether the users are retried.
+     */
+    void onExpired(SystemUserStatus status, long[] userIds);
+}
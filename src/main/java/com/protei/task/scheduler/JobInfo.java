@@ -1,5 +1,6 @@
 package com.protei.task.scheduler;
 
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -7,5 +8,6 @@ import lombok.Setter;
 @Setter
 public class JobInfo {
     private String userId;
+    private SystemUserStatus status;
     private long initialOffsetMs;
 }
@@ -6,6 +6,7 @@ import java.util.Date;
 
 public final class JobUtil {
     public static final String USER_ID_KEY = "userId";
+    public static final String STATUS_KEY = "status";
 
     private JobUtil() {
     }
@@ -15,6 +16,7 @@ public final class JobUtil {
         String userId = info.getUserId();
         jobDataMap.put(userId, info);
         jobDataMap.put(USER_ID_KEY, userId);
+        jobDataMap.put(STATUS_KEY, info.getStatus().name());
         return JobBuilder
                 .newJob(jobClass)
                 .withIdentity(userId)
@@ -0,0 +1,38 @@
+package com.protei.task.scheduler;
+
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.Instant;
+
+/**
+ * Presence deadline of a user, used by {@link DatabaseExpiryEngine}: when it passes, a user still
+ * in status moves to the next lifecycle status. Only mapped so that the table and its deadline
+ * index are created with the rest of the schema; rows are read and written with plain SQL. Rows
+ * written before the lifecycle had more than one stage default to ONLINE.
+ */
+@Entity
+@Table(name = "presence_deadline", indexes = @Index(name = "presence_deadline_deadline_idx", columnList = "deadline"))
+@Getter
+@Setter
+@NoArgsConstructor
+public class PresenceDeadline {
+    @Id
+    private long userId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, columnDefinition = "varchar(16) default 'ONLINE'")
+    private SystemUserStatus status;
+
+    @Column(nullable = false, columnDefinition = "timestamp with time zone")
+    private Instant deadline;
+}
@@ -0,0 +1,36 @@
+package com.protei.task.scheduler;
+
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
+
+/**
+ * Keeps at most one presence deadline per user. A deadline is armed for the status the user is in
+ * and is handed back with that status when it expires, so that the transition it triggers is only
+ * applied if the user has not changed status since.
+ */
+public interface PresenceExpiryEngine {
+    /**
+     * Time from the scheduled deadline to the presence update of the expired user.
+     */
+    String FIRE_LAG_TIMER = "presence.expiry.lag";
+
+    void arm(long userId, SystemUserStatus status, long delayMs);
+
+    /**
+     * Moves the user's deadline if one is armed for the given status.
+     */
+    boolean rearm(long userId, SystemUserStatus status, long delayMs);
+
+    void arm(long[] userIds, SystemUserStatus status, long[] delaysMs);
+
+    void armIfAbsent(long[] userIds, SystemUserStatus status, long[] delaysMs);
+
+    void cancel(long userId);
+
+    void cancel(long[] userIds);
+
+    long getPendingTimerCount();
+
+    void start();
+
+    void stop();
+}
@@ -0,0 +1,25 @@
+package com.protei.task.scheduler;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "presence.expiry")
+public class PresenceExpiryProperties {
+    private String engine = "wheel";
+    private long tickMs = 100L;
+    private int wheelSize = 4096;
+    private int shards = 16;
+    private int initialCapacity = 1024;
+    private long flushWindowMs = 1000L;
+    private int batchSize = 500;
+    private long retryDelayMs = 1000L;
+    private long pollMs = 1000L;
+    private int nodeCount = 1;
+    private int nodeIndex = 0;
+    private long takeoverMs = 30000L;
+}
@@ -0,0 +1,171 @@
+package com.protei.task.scheduler;
+
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.*;
+import org.quartz.impl.matchers.GroupMatcher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "presence.expiry.engine", havingValue = "quartz")
+public class QuartzExpiryEngine implements PresenceExpiryEngine {
+    private static final String CALL_TIMER = "presence.expiry.quartz";
+
+    private final Scheduler scheduler;
+    private final Timer scheduleJobTimer;
+    private final Timer deleteJobTimer;
+
+    @Autowired
+    public QuartzExpiryEngine(Scheduler scheduler, MeterRegistry meterRegistry) {
+        this.scheduler = scheduler;
+        this.scheduleJobTimer = meterRegistry.timer(CALL_TIMER, "call", "schedule_job");
+        this.deleteJobTimer = meterRegistry.timer(CALL_TIMER, "call", "delete_job");
+    }
+
+    @Override
+    public void arm(long userId, SystemUserStatus status, long delayMs) {
+        String userIdString = String.valueOf(userId);
+        if (getRunningJob(userIdString) != null) {
+            deleteJob(userIdString);
+        }
+        JobInfo info = new JobInfo();
+        info.setUserId(userIdString);
+        info.setStatus(status);
+        info.setInitialOffsetMs(delayMs);
+        schedule(SystemUserStatusUpdateJob.class, info);
+    }
+
+    @Override
+    public boolean rearm(long userId, SystemUserStatus status, long delayMs) {
+        JobInfo info = getRunningJob(String.valueOf(userId));
+        if (info == null || info.getStatus() != status || !isPending(info.getUserId())) {
+            return false;
+        }
+        arm(userId, status, delayMs);
+        return true;
+    }
+
+    @Override
+    public void arm(long[] userIds, SystemUserStatus status, long[] delaysMs) {
+        for (int i = 0; i < userIds.length; i++) {
+            arm(userIds[i], status, delaysMs[i]);
+        }
+    }
+
+    /**
+     * A job whose trigger has fired counts as absent, so the next stage can be armed from within it.
+     */
+    @Override
+    public void armIfAbsent(long[] userIds, SystemUserStatus status, long[] delaysMs) {
+        for (int i = 0; i < userIds.length; i++) {
+            if (!isPending(String.valueOf(userIds[i]))) {
+                arm(userIds[i], status, delaysMs[i]);
+            }
+        }
+    }
+
+    @Override
+    public void cancel(long userId) {
+        String userIdString = String.valueOf(userId);
+        if (getRunningJob(userIdString) != null) {
+            deleteJob(userIdString);
+        }
+    }
+
+    @Override
+    public void cancel(long[] userIds) {
+        for (long userId : userIds) {
+            cancel(userId);
+        }
+    }
+
+    @Override
+    public long getPendingTimerCount() {
+        try {
+            return scheduler.getJobKeys(GroupMatcher.anyJobGroup()).size();
+        } catch (SchedulerException e) {
+            log.error(e.getMessage(), e);
+            return 0L;
+        }
+    }
+
+    public <T extends Job> void schedule(Class<T> jobClass, JobInfo info) {
+        JobDetail jobDetail = JobUtil.buildJobDetail(jobClass, info);
+        Trigger trigger = JobUtil.buildTrigger(info);
+        try {
+            log.debug("Start job with ID '{}'", info.getUserId());
+            long start = System.nanoTime();
+            scheduler.scheduleJob(jobDetail, trigger);
+            scheduleJobTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        } catch (SchedulerException e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    public JobInfo getRunningJob(String userId) {
+        try {
+            JobDetail jobDetail = scheduler.getJobDetail(new JobKey(userId));
+            if (jobDetail == null) {
+                log.debug("Failed to find job with ID '{}'", userId);
+                return null;
+            }
+            log.debug("Found job with ID '{}'", userId);
+            return (JobInfo) jobDetail.getJobDataMap().get(userId);
+        } catch (SchedulerException e) {
+            log.error(e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private boolean isPending(String userId) {
+        try {
+            for (Trigger trigger : scheduler.getTriggersOfJob(new JobKey(userId))) {
+                if (trigger.getNextFireTime() != null) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (SchedulerException e) {
+            log.error(e.getMessage(), e);
+            return false;
+        }
+    }
+
+    public void deleteJob(final String userId) {
+        try {
+            log.debug("Delete job with ID '{}'", userId);
+            long start = System.nanoTime();
+            scheduler.deleteJob(new JobKey(userId));
+            deleteJobTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        } catch (SchedulerException e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void start() {
+        try {
+            log.info("Scheduler start");
+            scheduler.start();
+        } catch (SchedulerException e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void stop() {
+        try {
+            log.info("Scheduler shut down");
+            scheduler.shutdown();
+        } catch (SchedulerException e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+}
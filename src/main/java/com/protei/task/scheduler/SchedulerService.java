@@ -1,75 +1,94 @@
 package com.protei.task.scheduler;
 
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
-import org.quartz.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Service
 public class SchedulerService {
-    private final Scheduler scheduler;
+    private static final String OPERATION_TIMER = "presence.expiry.operation";
+
+    private final PresenceExpiryEngine expiryEngine;
+    private final Timer armTimer;
+    private final Timer rearmTimer;
+    private final Timer armAllTimer;
+    private final Timer armIfAbsentTimer;
+    private final Timer cancelTimer;
+    private final Timer cancelAllTimer;
 
     @Autowired
-    public SchedulerService(Scheduler scheduler) {
-        this.scheduler = scheduler;
+    public SchedulerService(PresenceExpiryEngine expiryEngine, MeterRegistry meterRegistry) {
+        this.expiryEngine = expiryEngine;
+        this.armTimer = meterRegistry.timer(OPERATION_TIMER, "operation", "arm");
+        this.rearmTimer = meterRegistry.timer(OPERATION_TIMER, "operation", "rearm");
+        this.armAllTimer = meterRegistry.timer(OPERATION_TIMER, "operation", "arm_all");
+        this.armIfAbsentTimer = meterRegistry.timer(OPERATION_TIMER, "operation", "arm_if_absent");
+        this.cancelTimer = meterRegistry.timer(OPERATION_TIMER, "operation", "cancel");
+        this.cancelAllTimer = meterRegistry.timer(OPERATION_TIMER, "operation", "cancel_all");
+        Gauge.builder("presence.expiry.pending", this, SchedulerService::getPendingTimerCount)
+                .description("Armed presence timers")
+                .register(meterRegistry);
+    }
+
+    public void armPresenceTimer(long userId, SystemUserStatus status, long delayMs) {
+        long start = System.nanoTime();
+        expiryEngine.arm(userId, status, delayMs);
+        armTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    public boolean rearmPresenceTimer(long userId, SystemUserStatus status, long delayMs) {
+        long start = System.nanoTime();
+        boolean rearmed = expiryEngine.rearm(userId, status, delayMs);
+        rearmTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return rearmed;
+    }
+
+    public void armPresenceTimers(long[] userIds, SystemUserStatus status, long[] delaysMs) {
+        long start = System.nanoTime();
+        expiryEngine.arm(userIds, status, delaysMs);
+        armAllTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    public void armPresenceTimersIfAbsent(long[] userIds, SystemUserStatus status, long[] delaysMs) {
+        long start = System.nanoTime();
+        expiryEngine.armIfAbsent(userIds, status, delaysMs);
+        armIfAbsentTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
     }
 
-    public <T extends Job> void schedule(Class<T> jobClass, JobInfo info) {
-        JobDetail jobDetail = JobUtil.buildJobDetail(jobClass, info);
-        Trigger trigger = JobUtil.buildTrigger(info);
-        try {
-            log.info("Start job with ID '{}'", info.getUserId());
-            scheduler.scheduleJob(jobDetail, trigger);
-        } catch (SchedulerException e) {
-            log.error(e.getMessage(), e);
-        }
+    public void cancelPresenceTimer(long userId) {
+        long start = System.nanoTime();
+        expiryEngine.cancel(userId);
+        cancelTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
     }
 
-    public JobInfo getRunningJob(String userId) {
-        try {
-            JobDetail jobDetail = scheduler.getJobDetail(new JobKey(userId));
-            if (jobDetail == null) {
-                log.info("Failed to find job with ID '{}'", userId);
-                return null;
-            }
-            log.info("Found job with ID '{}'", userId);
-            return (JobInfo) jobDetail.getJobDataMap().get(userId);
-        } catch (SchedulerException e) {
-            log.error(e.getMessage(), e);
-            return null;
-        }
+    public void cancelPresenceTimers(long[] userIds) {
+        long start = System.nanoTime();
+        expiryEngine.cancel(userIds);
+        cancelAllTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
     }
 
-    public void deleteJob(final String userId) {
-        try {
-            log.info("Delete job with ID '{}'", userId);
-            scheduler.deleteJob(new JobKey(userId));
-        } catch (SchedulerException e) {
-            log.error(e.getMessage(), e);
-        }
+    public long getPendingTimerCount() {
+        return expiryEngine.getPendingTimerCount();
     }
 
     @PostConstruct
     public void init() {
-        try {
-            log.info("Scheduler start");
-            scheduler.start();
-        } catch (SchedulerException e) {
-            log.error(e.getMessage(), e);
-        }
+        log.info("Starting presence expiry engine '{}'", expiryEngine.getClass().getSimpleName());
+        expiryEngine.start();
     }
 
     @PreDestroy
     public void preDestroy() {
-        try {
-            log.info("Scheduler shut down");
-            scheduler.shutdown();
-        } catch (SchedulerException e) {
-            log.error(e.getMessage(), e);
-        }
+        log.info("Stopping presence expiry engine '{}'", expiryEngine.getClass().getSimpleName());
+        expiryEngine.stop();
     }
 }
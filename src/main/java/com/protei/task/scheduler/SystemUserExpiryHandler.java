@@ -0,0 +1,26 @@
+package com.protei.task.scheduler;
+
+import com.protei.task.systemuser.SystemUserService;
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+@Slf4j
+@Component
+public class SystemUserExpiryHandler implements ExpiredUsersHandler {
+    private final SystemUserService userService;
+
+    @Autowired
+    public SystemUserExpiryHandler(SystemUserService userService) {
+        this.userService = userService;
+    }
+
+    @Override
+    public void onExpired(SystemUserStatus status, long[] userIds) {
+        long start = System.nanoTime();
+        int updated = userService.expirePresence(status, userIds);
+        log.debug("Expired {} of {} {} SystemUsers in {} ms",
+                updated, userIds.length, status, (System.nanoTime() - start) / 1_000_000);
+    }
+}
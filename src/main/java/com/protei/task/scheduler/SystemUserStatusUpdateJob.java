@@ -1,32 +1,81 @@
 package com.protei.task.scheduler;
 
-import com.protei.task.systemuser.SystemUserService;
 import com.protei.task.systemuser.enumeration.SystemUserStatus;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.quartz.DisallowConcurrentExecution;
 import org.quartz.Job;
 import org.quartz.JobDataMap;
 import org.quartz.JobExecutionContext;
+import org.quartz.SchedulerException;
+import org.quartz.Trigger;
+import org.quartz.TriggerBuilder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Expires one user. When the handler fails, the job is fired again after retry-delay-ms, like a
+ * batch of the timing wheel, unless the user was armed again while it ran.
+ */
 @Slf4j
 @Component
 @DisallowConcurrentExecution
 public class SystemUserStatusUpdateJob implements Job {
 
-    private final SystemUserService userService;
+    private final ExpiredUsersHandler expiredUsersHandler;
+    private final Timer fireLagTimer;
+    private final long retryDelayMs;
 
     @Autowired
-    public SystemUserStatusUpdateJob(SystemUserService userService) {
-        this.userService = userService;
+    public SystemUserStatusUpdateJob(ExpiredUsersHandler expiredUsersHandler,
+                                     PresenceExpiryProperties properties,
+                                     MeterRegistry meterRegistry) {
+        this.expiredUsersHandler = expiredUsersHandler;
+        this.fireLagTimer = meterRegistry.timer(PresenceExpiryEngine.FIRE_LAG_TIMER);
+        this.retryDelayMs = properties.getRetryDelayMs();
     }
 
     @Override
     public void execute(JobExecutionContext context) {
         JobDataMap data = context.getJobDetail().getJobDataMap();
         String userId = (String) data.get(JobUtil.USER_ID_KEY);
-        log.info("Updating SystemUser with id '{}'", userId);
-        userService.updateSystemUserStatus(Long.parseLong(userId), SystemUserStatus.AWAY.name());
+        SystemUserStatus status = SystemUserStatus.valueOf((String) data.get(JobUtil.STATUS_KEY));
+        log.debug("Expiring {} SystemUser with id '{}'", status, userId);
+        try {
+            expiredUsersHandler.onExpired(status, new long[]{Long.parseLong(userId)});
+        } catch (RuntimeException e) {
+            log.error("Failed to expire {} SystemUser with id '{}', retrying in {} ms",
+                    status, userId, retryDelayMs, e);
+            retry(context);
+            return;
+        }
+        long lagMs = System.currentTimeMillis() - context.getScheduledFireTime().getTime();
+        fireLagTimer.record(Math.max(lagMs, 0L), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Replaces the fired trigger with one firing after retry-delay-ms. A trigger that still has a
+     * fire time to come belongs to a newer arm, which is left alone.
+     */
+    private void retry(JobExecutionContext context) {
+        Trigger fired = context.getTrigger();
+        try {
+            Trigger current = context.getScheduler().getTrigger(fired.getKey());
+            if (current == null || current.getNextFireTime() != null) {
+                return;
+            }
+            Trigger retry = TriggerBuilder.newTrigger()
+                    .withIdentity(fired.getKey())
+                    .forJob(context.getJobDetail())
+                    .startAt(new Date(System.currentTimeMillis() + retryDelayMs))
+                    .build();
+            context.getScheduler().rescheduleJob(fired.getKey(), retry);
+        } catch (SchedulerException e) {
+            log.error(e.getMessage(), e);
+        }
     }
 }
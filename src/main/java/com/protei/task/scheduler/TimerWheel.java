@@ -0,0 +1,163 @@
+package com.protei.task.scheduler;
+
+import com.protei.task.util.LongArrayList;
+import com.protei.task.util.LongIntHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Hashed timing wheel keyed by user id. Each user owns at most one node, so re-arming
+ * moves the node to another bucket without allocating. Every node carries a small tag, the
+ * presence stage it expires, which is handed back with the expired user. Not thread safe.
+ */
+final class TimerWheel {
+    private static final int NIL = -1;
+
+    private final int[] buckets;
+    private final int bucketMask;
+    private final LongIntHashMap nodeByUserId;
+
+    private long[] userIds;
+    private long[] deadlineTicks;
+    private byte[] tags;
+    private int[] next;
+    private int[] prev;
+    private int freeHead = NIL;
+    private int allocated;
+    private long currentTick;
+
+    TimerWheel(int wheelSize, int initialCapacity, long startTick) {
+        if (Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("Wheel size must be a power of two: " + wheelSize);
+        }
+        buckets = new int[wheelSize];
+        Arrays.fill(buckets, NIL);
+        bucketMask = wheelSize - 1;
+        nodeByUserId = new LongIntHashMap(initialCapacity, NIL);
+        int capacity = Math.max(initialCapacity, 16);
+        userIds = new long[capacity];
+        deadlineTicks = new long[capacity];
+        tags = new byte[capacity];
+        next = new int[capacity];
+        prev = new int[capacity];
+        currentTick = startTick;
+    }
+
+    void arm(long userId, byte tag, long deadlineTick) {
+        long tick = Math.max(deadlineTick, currentTick + 1);
+        int node = nodeByUserId.get(userId);
+        if (node == NIL) {
+            node = allocateNode();
+            userIds[node] = userId;
+            nodeByUserId.put(userId, node);
+        } else {
+            unlink(node);
+        }
+        deadlineTicks[node] = tick;
+        tags[node] = tag;
+        link(node);
+    }
+
+    /**
+     * Moves the deadline of the user's node if it is armed with the same tag.
+     */
+    boolean rearm(long userId, byte tag, long deadlineTick) {
+        int node = nodeByUserId.get(userId);
+        if (node == NIL || tags[node] != tag) {
+            return false;
+        }
+        unlink(node);
+        deadlineTicks[node] = Math.max(deadlineTick, currentTick + 1);
+        link(node);
+        return true;
+    }
+
+    boolean cancel(long userId) {
+        int node = nodeByUserId.remove(userId);
+        if (node == NIL) {
+            return false;
+        }
+        unlink(node);
+        releaseNode(node);
+        return true;
+    }
+
+    boolean contains(long userId) {
+        return nodeByUserId.containsKey(userId);
+    }
+
+    int size() {
+        return nodeByUserId.size();
+    }
+
+    /**
+     * Moves expired users and their deadline ticks to the lists at the index of their tag.
+     */
+    void advance(long toTick, LongArrayList[] expired, LongArrayList[] expiredDeadlineTicks) {
+        if (toTick <= currentTick) {
+            return;
+        }
+        long steps = Math.min(toTick - currentTick, buckets.length);
+        for (long tick = currentTick + 1; tick <= currentTick + steps; tick++) {
+            int node = buckets[(int) (tick & bucketMask)];
+            while (node != NIL) {
+                int following = next[node];
+                if (deadlineTicks[node] <= toTick) {
+                    expired[tags[node]].add(userIds[node]);
+                    expiredDeadlineTicks[tags[node]].add(deadlineTicks[node]);
+                    nodeByUserId.remove(userIds[node]);
+                    unlink(node);
+                    releaseNode(node);
+                }
+                node = following;
+            }
+        }
+        currentTick = toTick;
+    }
+
+    private void link(int node) {
+        int bucket = (int) (deadlineTicks[node] & bucketMask);
+        int head = buckets[bucket];
+        prev[node] = NIL;
+        next[node] = head;
+        if (head != NIL) {
+            prev[head] = node;
+        }
+        buckets[bucket] = node;
+    }
+
+    private void unlink(int node) {
+        int before = prev[node];
+        int after = next[node];
+        if (before == NIL) {
+            buckets[(int) (deadlineTicks[node] & bucketMask)] = after;
+        } else {
+            next[before] = after;
+        }
+        if (after != NIL) {
+            prev[after] = before;
+        }
+    }
+
+    private int allocateNode() {
+        if (freeHead != NIL) {
+            int node = freeHead;
+            freeHead = next[node];
+            return node;
+        }
+        if (allocated == userIds.length) {
+            int capacity = userIds.length << 1;
+            userIds = Arrays.copyOf(userIds, capacity);
+            deadlineTicks = Arrays.copyOf(deadlineTicks, capacity);
+            tags = Arrays.copyOf(tags, capacity);
+            next = Arrays.copyOf(next, capacity);
+            prev = Arrays.copyOf(prev, capacity);
+        }
+        return allocated++;
+    }
+
+    private void releaseNode(int node) {
+        next[node] = freeHead;
+        freeHead = node;
+    }
+}
@@ -0,0 +1,268 @@
+package com.protei.task.scheduler;
+
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
+import com.protei.task.util.LongArrayList;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "presence.expiry.engine", havingValue = "wheel", matchIfMissing = true)
+public class TimingWheelExpiryEngine implements PresenceExpiryEngine {
+    private static final SystemUserStatus[] STATUSES = SystemUserStatus.values();
+
+    private final ObjectProvider<ExpiredUsersHandler> handlerProvider;
+    private final long tickMs;
+    private final long startMs;
+    private final TimerWheel[] shards;
+    private final int shardMask;
+    private final long flushWindowMs;
+    private final int batchSize;
+    private final long retryDelayMs;
+    private final Timer fireLagTimer;
+    private final LongArrayList[] expired = newLists();
+    private final LongArrayList[] expiredDeadlineTicks = newLists();
+    private final LongArrayList due = new LongArrayList();
+    private final LongArrayList dueDeadlineTicks = new LongArrayList();
+    private int expiredCount;
+    private long firstExpiredMs;
+
+    private ScheduledExecutorService ticker;
+
+    @Autowired
+    public TimingWheelExpiryEngine(PresenceExpiryProperties properties,
+                                   ObjectProvider<ExpiredUsersHandler> handlerProvider,
+                                   MeterRegistry meterRegistry) {
+        if (Integer.bitCount(properties.getShards()) != 1) {
+            throw new IllegalArgumentException("Shard count must be a power of two: " + properties.getShards());
+        }
+        this.handlerProvider = handlerProvider;
+        this.fireLagTimer = meterRegistry.timer(FIRE_LAG_TIMER);
+        this.tickMs = properties.getTickMs();
+        this.flushWindowMs = properties.getFlushWindowMs();
+        this.batchSize = properties.getBatchSize();
+        this.retryDelayMs = properties.getRetryDelayMs();
+        this.startMs = System.currentTimeMillis();
+        this.shards = new TimerWheel[properties.getShards()];
+        this.shardMask = shards.length - 1;
+        int shardCapacity = Math.max(properties.getInitialCapacity() / shards.length, 16);
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new TimerWheel(properties.getWheelSize(), shardCapacity, 0L);
+        }
+    }
+
+    @Override
+    public void arm(long userId, SystemUserStatus status, long delayMs) {
+        long deadlineTick = toCeilingTick(System.currentTimeMillis() + delayMs);
+        TimerWheel shard = shardFor(userId);
+        synchronized (shard) {
+            shard.arm(userId, toTag(status), deadlineTick);
+        }
+    }
+
+    @Override
+    public boolean rearm(long userId, SystemUserStatus status, long delayMs) {
+        long deadlineTick = toCeilingTick(System.currentTimeMillis() + delayMs);
+        TimerWheel shard = shardFor(userId);
+        synchronized (shard) {
+            return shard.rearm(userId, toTag(status), deadlineTick);
+        }
+    }
+
+    @Override
+    public void arm(long[] userIds, SystemUserStatus status, long[] delaysMs) {
+        long nowMs = System.currentTimeMillis();
+        byte tag = toTag(status);
+        for (int i = 0; i < userIds.length; i++) {
+            TimerWheel shard = shardFor(userIds[i]);
+            synchronized (shard) {
+                shard.arm(userIds[i], tag, toCeilingTick(nowMs + delaysMs[i]));
+            }
+        }
+    }
+
+    @Override
+    public void armIfAbsent(long[] userIds, SystemUserStatus status, long[] delaysMs) {
+        long nowMs = System.currentTimeMillis();
+        byte tag = toTag(status);
+        for (int i = 0; i < userIds.length; i++) {
+            TimerWheel shard = shardFor(userIds[i]);
+            synchronized (shard) {
+                if (!shard.contains(userIds[i])) {
+                    shard.arm(userIds[i], tag, toCeilingTick(nowMs + delaysMs[i]));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void cancel(long userId) {
+        TimerWheel shard = shardFor(userId);
+        synchronized (shard) {
+            shard.cancel(userId);
+        }
+    }
+
+    @Override
+    public void cancel(long[] userIds) {
+        for (long userId : userIds) {
+            cancel(userId);
+        }
+    }
+
+    @Override
+    public long getPendingTimerCount() {
+        long count = 0;
+        for (TimerWheel shard : shards) {
+            synchronized (shard) {
+                count += shard.size();
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void start() {
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "presence-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+    }
+
+    private void tick() {
+        try {
+            long nowMs = System.currentTimeMillis();
+            long currentTick = (nowMs - startMs) / tickMs;
+            int expiredBefore = expiredCount;
+            for (TimerWheel shard : shards) {
+                synchronized (shard) {
+                    shard.advance(currentTick, expired, expiredDeadlineTicks);
+                }
+            }
+            expiredCount = 0;
+            for (LongArrayList userIds : expired) {
+                expiredCount += userIds.size();
+            }
+            if (expiredBefore == 0 && expiredCount > 0) {
+                firstExpiredMs = nowMs;
+            }
+            if (expiredCount > 0 && (expiredCount >= batchSize || nowMs - firstExpiredMs >= flushWindowMs)) {
+                for (SystemUserStatus status : STATUSES) {
+                    flushExpired(status);
+                }
+                expiredCount = 0;
+            }
+        } catch (RuntimeException e) {
+            log.error(e.getMessage(), e);
+            for (SystemUserStatus status : STATUSES) {
+                retry(status, expired[status.ordinal()].toArray());
+                expired[status.ordinal()].clear();
+                expiredDeadlineTicks[status.ordinal()].clear();
+            }
+            expiredCount = 0;
+        }
+    }
+
+    private void flushExpired(SystemUserStatus status) {
+        LongArrayList userIds = expired[status.ordinal()];
+        LongArrayList deadlineTicks = expiredDeadlineTicks[status.ordinal()];
+        if (userIds.isEmpty()) {
+            return;
+        }
+        due.clear();
+        dueDeadlineTicks.clear();
+        for (int i = 0; i < userIds.size(); i++) {
+            long userId = userIds.get(i);
+            TimerWheel shard = shardFor(userId);
+            synchronized (shard) {
+                if (!shard.contains(userId)) {
+                    due.add(userId);
+                    dueDeadlineTicks.add(deadlineTicks.get(i));
+                }
+            }
+        }
+        userIds.clear();
+        deadlineTicks.clear();
+        log.debug("Flushing {} expired {} timers", due.size(), status);
+        ExpiredUsersHandler handler = handlerProvider.getObject();
+        for (int from = 0; from < due.size(); from += batchSize) {
+            int to = Math.min(from + batchSize, due.size());
+            long[] batch = due.toArray(from, to);
+            try {
+                handler.onExpired(status, batch);
+                recordFireLag(from, to);
+            } catch (RuntimeException e) {
+                log.error("Failed to expire {} {} users, retrying in {} ms", batch.length, status, retryDelayMs, e);
+                retry(status, batch);
+            }
+        }
+        due.clear();
+        dueDeadlineTicks.clear();
+    }
+
+    /**
+     * Users that fired are already out of the wheel, so a batch the handler failed on is armed
+     * again after retry-delay-ms unless one of them was armed meanwhile.
+     */
+    private void retry(SystemUserStatus status, long[] userIds) {
+        long deadlineTick = toCeilingTick(System.currentTimeMillis() + retryDelayMs);
+        byte tag = toTag(status);
+        for (long userId : userIds) {
+            TimerWheel shard = shardFor(userId);
+            synchronized (shard) {
+                if (!shard.contains(userId)) {
+                    shard.arm(userId, tag, deadlineTick);
+                }
+            }
+        }
+    }
+
+    /**
+     * Deadlines are rounded up to a tick when armed, so the lag is measured from the deadline tick.
+     */
+    private void recordFireLag(int from, int to) {
+        long nowMs = System.currentTimeMillis();
+        for (int i = from; i < to; i++) {
+            long deadlineMs = startMs + dueDeadlineTicks.get(i) * tickMs;
+            fireLagTimer.record(Math.max(nowMs - deadlineMs, 0L), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private TimerWheel shardFor(long userId) {
+        return shards[(int) (userId & shardMask)];
+    }
+
+    private long toCeilingTick(long timeMs) {
+        return (timeMs - startMs + tickMs - 1) / tickMs;
+    }
+
+    private static byte toTag(SystemUserStatus status) {
+        return (byte) status.ordinal();
+    }
+
+    private static LongArrayList[] newLists() {
+        LongArrayList[] lists = new LongArrayList[STATUSES.length];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = new LongArrayList();
+        }
+        return lists;
+    }
+}
@@ -0,0 +1,47 @@
+package com.protei.task.systemuser;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.i18n.phonenumbers.NumberParseException;
+import com.google.i18n.phonenumbers.PhoneNumberUtil;
+import com.google.i18n.phonenumbers.PhoneNumberUtil.PhoneNumberFormat;
+import com.google.i18n.phonenumbers.Phonenumber.PhoneNumber;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+
+@Component
+public class PhoneNumberNormalizer {
+    private final PhoneNumberUtil phoneUtil = PhoneNumberUtil.getInstance();
+    private final String region;
+    // Invalid numbers are cached as empty, so they aren't parsed again either
+    private final Cache<String, Optional<String>> cache;
+
+    @Autowired
+    public PhoneNumberNormalizer(PhoneNumberProperties properties) {
+        this.region = properties.getRegion();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getCacheSize())
+                .build();
+    }
+
+    public String normalize(String phoneNumber) {
+        if (phoneNumber == null) {
+            return null;
+        }
+        return cache.get(phoneNumber, this::parse).orElse(null);
+    }
+
+    private Optional<String> parse(String phoneNumber) {
+        try {
+            PhoneNumber phoneNumberProto = phoneUtil.parse(phoneNumber, region);
+            if (!phoneUtil.isValidNumber(phoneNumberProto)) {
+                return Optional.empty();
+            }
+            return Optional.of(phoneUtil.format(phoneNumberProto, PhoneNumberFormat.E164));
+        } catch (NumberParseException e) {
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.protei.task.systemuser;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "systemuser.phone-number")
+public class PhoneNumberProperties {
+    private String region = "RU";
+    private int cacheSize = 10000;
+}
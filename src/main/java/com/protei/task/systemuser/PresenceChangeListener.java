@@ -0,0 +1,20 @@
+package com.protei.task.systemuser;
+
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
+
+/**
+ * Notified by {@link PresenceStore} of every status transition. {@code previous} is null when a user
+ * is loaded into the store and {@code status} is null when a user is removed. Called while the
+ * user's stripe is locked, so implementations must return quickly and never block.
+ */
+public interface PresenceChangeListener {
+    void onStatusChanged(long userId, SystemUserStatus previous, SystemUserStatus status);
+
+    /**
+     * Notified instead of {@link #onStatusChanged} when the store only catches up with a status
+     * the row was given by another node, which that node has already reported to its own listeners.
+     */
+    default void onStatusSynced(long userId, SystemUserStatus previous, SystemUserStatus status) {
+        onStatusChanged(userId, previous, status);
+    }
+}
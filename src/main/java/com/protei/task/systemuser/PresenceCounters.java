@@ -0,0 +1,81 @@
+package com.protei.task.systemuser;
+
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Number of users per presence status, kept up to date from {@link PresenceStore} transitions so
+ * that reading it never touches the database. {@link #reconcile()} compares the counters with the
+ * system_user table and corrects them when the same difference shows up twice in a row; a one-off
+ * difference is just a change that hasn't been flushed yet.
+ */
+@Slf4j
+@Component
+public class PresenceCounters implements PresenceChangeListener {
+    private static final SystemUserStatus[] STATUSES = SystemUserStatus.values();
+
+    private final SystemUserRepository systemUserRepository;
+    private final ObjectProvider<PresenceStore> presenceStoreProvider;
+    private final LongAdder[] counters = new LongAdder[STATUSES.length];
+    private final long[] lastDrift = new long[STATUSES.length];
+
+    @Autowired
+    public PresenceCounters(SystemUserRepository systemUserRepository,
+                            ObjectProvider<PresenceStore> presenceStoreProvider) {
+        this.systemUserRepository = systemUserRepository;
+        this.presenceStoreProvider = presenceStoreProvider;
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    public void onStatusChanged(long userId, SystemUserStatus previous, SystemUserStatus status) {
+        if (previous != null) {
+            counters[previous.ordinal()].decrement();
+        }
+        if (status != null) {
+            counters[status.ordinal()].increment();
+        }
+    }
+
+    public Map<SystemUserStatus, Long> getSummary() {
+        Map<SystemUserStatus, Long> summary = new EnumMap<>(SystemUserStatus.class);
+        for (SystemUserStatus status : STATUSES) {
+            summary.put(status, counters[status.ordinal()].sum());
+        }
+        return summary;
+    }
+
+    @Scheduled(fixedDelayString = "${presence.summary.reconcile-interval-ms:60000}",
+            initialDelayString = "${presence.summary.reconcile-interval-ms:60000}")
+    public void reconcile() {
+        presenceStoreProvider.getObject().flush();
+        long[] persisted = new long[STATUSES.length];
+        for (SystemUserStatusCount count : systemUserRepository.countSystemUsersByStatus()) {
+            // Users without a status are held as OFFLINE by the store
+            SystemUserStatus status = count.getUserStatus() == null
+                    ? SystemUserStatus.OFFLINE
+                    : count.getUserStatus();
+            persisted[status.ordinal()] += count.getUserCount();
+        }
+        for (SystemUserStatus status : STATUSES) {
+            int i = status.ordinal();
+            long drift = persisted[i] - counters[i].sum();
+            if (drift != 0 && drift == lastDrift[i]) {
+                log.warn("Correcting {} counter by {} after two reconciliations with the same drift", status, drift);
+                counters[i].add(drift);
+                drift = 0;
+            }
+            lastDrift[i] = drift;
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package com.protei.task.systemuser;
+
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only log of presence transitions in presence_history, a table range-partitioned by UTC
+ * day. Transitions are buffered in memory and inserted in batches by a writer thread, so the
+ * status path only pays for an array append; when the buffer is full, transitions are dropped and
+ * counted rather than blocking the caller. Buffers are striped like the {@link PresenceStore},
+ * whose stripe lock the caller already holds, so status changes of different stripes never meet
+ * on a lock. In the database expiry mode every node holds every user, so a transition is only
+ * recorded by the node that made it, not by the ones syncing with it. Retention drops whole
+ * partitions, and partitions for the next partitions-ahead days are created in advance; a default
+ * partition takes transitions no day partition covers, e.g. after maintenance failed, and is
+ * trimmed to the retention period instead. PostgreSQL refuses to create a day partition while the
+ * default one holds rows of that day, so such a partition is created with the default partition
+ * detached and those rows are moved into it, in one transaction.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "presence.history.enabled", havingValue = "true", matchIfMissing = true)
+public class PresenceHistory implements PresenceChangeListener {
+    private static final SystemUserStatus[] STATUSES = SystemUserStatus.values();
+    private static final String PARTITION_PREFIX = "presence_history_p";
+    private static final DateTimeFormatter PARTITION_DAY = DateTimeFormatter.BASIC_ISO_DATE;
+    private static final String CREATE_TABLE =
+            "create table if not exists presence_history (" +
+                    "user_id bigint not null, " +
+                    "from_status varchar(16) not null, " +
+                    "to_status varchar(16) not null, " +
+                    "changed_at timestamp with time zone not null) " +
+                    "partition by range (changed_at)";
+    private static final String CREATE_INDEX =
+            "create index if not exists presence_history_user_id_changed_at_idx " +
+                    "on presence_history (user_id, changed_at)";
+    private static final String CREATE_PARTITION =
+            "create table if not exists %s partition of presence_history for values from ('%s') to ('%s')";
+    private static final String DEFAULT_PARTITION = "presence_history_default";
+    private static final String CREATE_DEFAULT_PARTITION =
+            "create table if not exists " + DEFAULT_PARTITION + " partition of presence_history default";
+    private static final String TRIM_DEFAULT_PARTITION = "delete from " + DEFAULT_PARTITION + " where changed_at < ?";
+    private static final String PARTITION_EXISTS = "select to_regclass(?) is not null";
+    private static final String DEFAULT_PARTITION_HAS_DAY =
+            "select exists (select 1 from " + DEFAULT_PARTITION + " where changed_at >= ? and changed_at < ?)";
+    private static final String DETACH_DEFAULT_PARTITION =
+            "alter table presence_history detach partition " + DEFAULT_PARTITION;
+    private static final String ATTACH_DEFAULT_PARTITION =
+            "alter table presence_history attach partition " + DEFAULT_PARTITION + " default";
+    private static final String MOVE_DAY_FROM_DEFAULT_PARTITION =
+            "with moved as (delete from " + DEFAULT_PARTITION + " where changed_at >= ? and changed_at < ? " +
+                    "returning user_id, from_status, to_status, changed_at) " +
+                    "insert into presence_history (user_id, from_status, to_status, changed_at) " +
+                    "select user_id, from_status, to_status, changed_at from moved";
+    private static final String DROP_PARTITION = "drop table if exists %s";
+    private static final String LIST_PARTITIONS =
+            "select c.relname from pg_inherits i " +
+                    "join pg_class c on c.oid = i.inhrelid " +
+                    "join pg_class p on p.oid = i.inhparent " +
+                    "where p.relname = 'presence_history'";
+    private static final String INSERT =
+            "insert into presence_history (user_id, from_status, to_status, changed_at) values (?, ?, ?, ?)";
+    private static final String SELECT =
+            "select from_status, to_status, changed_at from presence_history " +
+                    "where user_id = ? and changed_at >= ? and changed_at < ? " +
+                    "order by changed_at desc limit ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final long flushIntervalMs;
+    private final int batchSize;
+    private final int retentionDays;
+    private final int partitionsAhead;
+    private final Counter droppedCounter;
+    private final Timer writeTimer;
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    private ScheduledExecutorService writer;
+
+    @Autowired
+    public PresenceHistory(JdbcTemplate jdbcTemplate,
+                           PlatformTransactionManager transactionManager,
+                           PresenceHistoryProperties properties,
+                           PresenceStoreProperties storeProperties,
+                           MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.flushIntervalMs = properties.getFlushIntervalMs();
+        this.batchSize = properties.getBatchSize();
+        this.retentionDays = properties.getRetentionDays();
+        this.partitionsAhead = properties.getPartitionsAhead();
+        this.stripes = new Stripe[storeProperties.getStripes()];
+        this.stripeMask = stripes.length - 1;
+        int stripeCapacity = Math.max(properties.getBufferSize() / stripes.length, 1);
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe(stripeCapacity);
+        }
+        this.droppedCounter = meterRegistry.counter("presence.history.dropped");
+        this.writeTimer = meterRegistry.timer("presence.history.write");
+    }
+
+    @Override
+    public void onStatusChanged(long userId, SystemUserStatus previous, SystemUserStatus status) {
+        if (previous == null || status == null || previous == status) {
+            return;
+        }
+        long changedAtMs = System.currentTimeMillis();
+        Stripe stripe = stripes[(int) (userId & stripeMask)];
+        boolean added;
+        synchronized (stripe) {
+            added = stripe.pending.add(userId, changedAtMs, previous, status);
+        }
+        if (!added) {
+            droppedCounter.increment();
+        }
+    }
+
+    @Override
+    public void onStatusSynced(long userId, SystemUserStatus previous, SystemUserStatus status) {
+    }
+
+    public List<PresenceHistoryEntry> getHistory(long userId, Instant from, Instant to, int limit) {
+        return jdbcTemplate.query(SELECT, (resultSet, rowNumber) -> new PresenceHistoryEntry(
+                        SystemUserStatus.valueOf(resultSet.getString(1)),
+                        SystemUserStatus.valueOf(resultSet.getString(2)),
+                        resultSet.getTimestamp(3).toInstant()),
+                userId, Timestamp.from(from), Timestamp.from(to), limit);
+    }
+
+    @PostConstruct
+    public void start() {
+        jdbcTemplate.execute(CREATE_TABLE);
+        jdbcTemplate.execute(CREATE_INDEX);
+        jdbcTemplate.execute(CREATE_DEFAULT_PARTITION);
+        maintainPartitions();
+        writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "presence-history-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::write, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        writer.shutdown();
+        if (writer.awaitTermination(flushIntervalMs, TimeUnit.MILLISECONDS)) {
+            write();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${presence.history.maintenance-interval-ms:3600000}",
+            initialDelayString = "${presence.history.maintenance-interval-ms:3600000}")
+    public void maintainPartitions() {
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        for (int day = 0; day <= partitionsAhead; day++) {
+            createPartition(today.plusDays(day));
+        }
+        LocalDate oldestKept = today.minusDays(retentionDays);
+        for (String partition : jdbcTemplate.queryForList(LIST_PARTITIONS, String.class)) {
+            LocalDate day = toPartitionDay(partition);
+            if (day != null && day.isBefore(oldestKept)) {
+                dropPartition(partition);
+            }
+        }
+        trimDefaultPartition(oldestKept);
+    }
+
+    private void write() {
+        long start = System.nanoTime();
+        List<Object[]> batch = new ArrayList<>(batchSize);
+        int written = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                Buffer full = stripe.pending;
+                stripe.pending = stripe.draining;
+                stripe.draining = full;
+            }
+            Buffer draining = stripe.draining;
+            for (int offset = 0; offset < draining.size; ) {
+                int end = Math.min(offset + batchSize - batch.size(), draining.size);
+                draining.addParameters(batch, offset, end);
+                offset = end;
+                if (batch.size() == batchSize) {
+                    written += writeBatch(batch);
+                }
+            }
+            draining.size = 0;
+        }
+        written += writeBatch(batch);
+        if (written > 0) {
+            writeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Inserts and clears the batch, counting it as dropped if the insert fails.
+     */
+    private int writeBatch(List<Object[]> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        int size = batch.size();
+        try {
+            jdbcTemplate.batchUpdate(INSERT, batch);
+            return size;
+        } catch (RuntimeException e) {
+            log.error("Failed to write {} presence transitions", size, e);
+            droppedCounter.increment(size);
+            return 0;
+        } finally {
+            batch.clear();
+        }
+    }
+
+    private void trimDefaultPartition(LocalDate oldestKept) {
+        try {
+            int deleted = jdbcTemplate.update(TRIM_DEFAULT_PARTITION,
+                    Timestamp.from(oldestKept.atStartOfDay(ZoneOffset.UTC).toInstant()));
+            if (deleted > 0) {
+                log.info("Deleted {} expired transitions from {}", deleted, DEFAULT_PARTITION);
+            }
+        } catch (DataAccessException e) {
+            log.warn("Failed to trim {}: {}", DEFAULT_PARTITION, e.getMessage());
+        }
+    }
+
+    private void createPartition(LocalDate day) {
+        String partition = PARTITION_PREFIX + PARTITION_DAY.format(day);
+        Timestamp from = Timestamp.from(day.atStartOfDay(ZoneOffset.UTC).toInstant());
+        Timestamp to = Timestamp.from(day.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant());
+        String create = String.format(CREATE_PARTITION, partition, from.toInstant(), to.toInstant());
+        try {
+            if (Boolean.TRUE.equals(jdbcTemplate.queryForObject(PARTITION_EXISTS, Boolean.class, partition))) {
+                return;
+            }
+            if (!Boolean.TRUE.equals(jdbcTemplate.queryForObject(DEFAULT_PARTITION_HAS_DAY, Boolean.class, from, to))) {
+                jdbcTemplate.execute(create);
+                return;
+            }
+            int moved = transactionTemplate.execute(transaction -> {
+                jdbcTemplate.execute(DETACH_DEFAULT_PARTITION);
+                jdbcTemplate.execute(create);
+                int count = jdbcTemplate.update(MOVE_DAY_FROM_DEFAULT_PARTITION, from, to);
+                jdbcTemplate.execute(ATTACH_DEFAULT_PARTITION);
+                return count;
+            });
+            log.info("Moved {} transitions from {} to {}", moved, DEFAULT_PARTITION, partition);
+        } catch (DataAccessException e) {
+            log.error("Failed to create presence history partition {}", partition, e);
+        }
+    }
+
+    private void dropPartition(String partition) {
+        try {
+            jdbcTemplate.execute(String.format(DROP_PARTITION, partition));
+            log.info("Dropped presence history partition {}", partition);
+        } catch (DataAccessException e) {
+            log.warn("Failed to drop presence history partition {}: {}", partition, e.getMessage());
+        }
+    }
+
+    private static LocalDate toPartitionDay(String partition) {
+        if (!partition.startsWith(PARTITION_PREFIX)) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(partition.substring(PARTITION_PREFIX.length()), PARTITION_DAY);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static final class Stripe {
+        private Buffer pending;
+        private Buffer draining;
+
+        private Stripe(int capacity) {
+            this.pending = new Buffer(capacity);
+            this.draining = new Buffer(capacity);
+        }
+    }
+
+    private static final class Buffer {
+        private final long[] userIds;
+        private final long[] changedAtMs;
+        private final byte[] fromStatuses;
+        private final byte[] toStatuses;
+        private int size;
+
+        private Buffer(int capacity) {
+            this.userIds = new long[capacity];
+            this.changedAtMs = new long[capacity];
+            this.fromStatuses = new byte[capacity];
+            this.toStatuses = new byte[capacity];
+        }
+
+        private boolean add(long userId, long timeMs, SystemUserStatus from, SystemUserStatus to) {
+            if (size == userIds.length) {
+                return false;
+            }
+            userIds[size] = userId;
+            changedAtMs[size] = timeMs;
+            fromStatuses[size] = (byte) from.ordinal();
+            toStatuses[size] = (byte) to.ordinal();
+            size++;
+            return true;
+        }
+
+        private void addParameters(List<Object[]> parameters, int from, int to) {
+            for (int i = from; i < to; i++) {
+                parameters.add(new Object[]{userIds[i], STATUSES[fromStatuses[i]].name(),
+                        STATUSES[toStatuses[i]].name(), new Timestamp(changedAtMs[i])});
+            }
+        }
+    }
+}
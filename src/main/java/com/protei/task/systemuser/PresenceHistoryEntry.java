@@ -0,0 +1,15 @@
+package com.protei.task.systemuser;
+
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+
+@Getter
+@AllArgsConstructor
+public class PresenceHistoryEntry {
+    private final SystemUserStatus fromStatus;
+    private final SystemUserStatus toStatus;
+    private final Instant changedAt;
+}
@@ -0,0 +1,19 @@
+package com.protei.task.systemuser;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "presence.history")
+public class PresenceHistoryProperties {
+    private boolean enabled = true;
+    private long flushIntervalMs = 1000L;
+    private int bufferSize = 100000;
+    private int batchSize = 1000;
+    private int retentionDays = 30;
+    private int partitionsAhead = 2;
+}
@@ -0,0 +1,152 @@
+package com.protei.task.systemuser;
+
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
+import com.protei.task.util.LongIntHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Presence lifecycle policy. An ONLINE user goes AWAY after away-after-ms without a heartbeat or
+ * status change, and an AWAY user goes OFFLINE after offline-after-ms; a timeout of 0 disables the
+ * transition. Either timeout can be overridden per user. Overrides are kept in
+ * presence_lifecycle_override and held in memory, and apply to deadlines armed after the change;
+ * they are loaded at startup, so a change made through another node is seen after a restart.
+ * Each user has at most one deadline in the expiry engine, the one of its current status, and the
+ * {@link SystemUserService} arms the next one when it fires.
+ */
+@Slf4j
+@Component
+public class PresenceLifecycle {
+    public static final long MAX_TIMEOUT_MS = Integer.MAX_VALUE;
+
+    private static final int DEFAULT = -1;
+    private static final String CREATE_TABLE =
+            "create table if not exists presence_lifecycle_override (" +
+                    "user_id bigint primary key, " +
+                    "away_after_ms bigint, " +
+                    "offline_after_ms bigint)";
+    private static final String SELECT_OVERRIDES =
+            "select user_id, away_after_ms, offline_after_ms from presence_lifecycle_override";
+    private static final String UPSERT_OVERRIDE =
+            "insert into presence_lifecycle_override (user_id, away_after_ms, offline_after_ms) values (?, ?, ?) " +
+                    "on conflict (user_id) do update set away_after_ms = excluded.away_after_ms, " +
+                    "offline_after_ms = excluded.offline_after_ms";
+    private static final String DELETE_OVERRIDE = "delete from presence_lifecycle_override where user_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long awayAfterMs;
+    private final long offlineAfterMs;
+    private final LongIntHashMap awayOverrides = new LongIntHashMap(16, DEFAULT);
+    private final LongIntHashMap offlineOverrides = new LongIntHashMap(16, DEFAULT);
+
+    private volatile boolean overridden;
+
+    @Autowired
+    public PresenceLifecycle(JdbcTemplate jdbcTemplate, PresenceLifecycleProperties properties) {
+        if (properties.getAwayAfterMs() < 0 || properties.getOfflineAfterMs() < 0) {
+            throw new IllegalArgumentException("Presence lifecycle timeouts can't be negative");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.awayAfterMs = properties.getAwayAfterMs();
+        this.offlineAfterMs = properties.getOfflineAfterMs();
+    }
+
+    /**
+     * Status a user in status moves to when its deadline passes, or null if it stays there.
+     */
+    public static SystemUserStatus nextStatus(SystemUserStatus status) {
+        switch (status) {
+            case ONLINE:
+                return SystemUserStatus.AWAY;
+            case AWAY:
+                return SystemUserStatus.OFFLINE;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Time the user may stay in status before moving to the next one, 0 if it stays there.
+     */
+    public long getTimeoutMs(long userId, SystemUserStatus status) {
+        long timeoutMs;
+        LongIntHashMap overrides;
+        if (status == SystemUserStatus.ONLINE) {
+            timeoutMs = awayAfterMs;
+            overrides = awayOverrides;
+        } else if (status == SystemUserStatus.AWAY) {
+            timeoutMs = offlineAfterMs;
+            overrides = offlineOverrides;
+        } else {
+            return 0L;
+        }
+        if (!overridden) {
+            return timeoutMs;
+        }
+        int overrideMs;
+        synchronized (this) {
+            overrideMs = overrides.get(userId);
+        }
+        return overrideMs == DEFAULT ? timeoutMs : overrideMs;
+    }
+
+    public PresenceLifecycleTimeouts getTimeouts(long userId) {
+        return new PresenceLifecycleTimeouts(getTimeoutMs(userId, SystemUserStatus.ONLINE),
+                getTimeoutMs(userId, SystemUserStatus.AWAY));
+    }
+
+    /**
+     * Overrides the timeouts of the user; a null timeout falls back to the configured one.
+     */
+    public void setOverride(long userId, Long awayAfterMs, Long offlineAfterMs) {
+        if (awayAfterMs == null && offlineAfterMs == null) {
+            removeOverride(userId);
+            return;
+        }
+        jdbcTemplate.update(UPSERT_OVERRIDE, userId, awayAfterMs, offlineAfterMs);
+        putOverride(userId, awayAfterMs, offlineAfterMs);
+    }
+
+    public void removeOverride(long userId) {
+        jdbcTemplate.update(DELETE_OVERRIDE, userId);
+        putOverride(userId, null, null);
+    }
+
+    @PostConstruct
+    public void loadOverrides() {
+        jdbcTemplate.execute(CREATE_TABLE);
+        int[] count = new int[1];
+        jdbcTemplate.query(SELECT_OVERRIDES, (RowCallbackHandler) row -> {
+            putOverride(row.getLong(1), getTimeout(row, 2), getTimeout(row, 3));
+            count[0]++;
+        });
+        log.info("Presence lifecycle: AWAY after {} ms, OFFLINE after {} ms, {} user overrides",
+                awayAfterMs, offlineAfterMs, count[0]);
+    }
+
+    private synchronized void putOverride(long userId, Long awayAfterMs, Long offlineAfterMs) {
+        putOverride(awayOverrides, userId, awayAfterMs);
+        putOverride(offlineOverrides, userId, offlineAfterMs);
+        overridden = !awayOverrides.isEmpty() || !offlineOverrides.isEmpty();
+    }
+
+    private static void putOverride(LongIntHashMap overrides, long userId, Long timeoutMs) {
+        if (timeoutMs == null) {
+            overrides.remove(userId);
+        } else {
+            overrides.put(userId, (int) Math.min(timeoutMs, MAX_TIMEOUT_MS));
+        }
+    }
+
+    private static Long getTimeout(ResultSet row, int column) throws SQLException {
+        long timeoutMs = row.getLong(column);
+        return row.wasNull() ? null : timeoutMs;
+    }
+}
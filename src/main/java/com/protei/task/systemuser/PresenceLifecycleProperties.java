@@ -0,0 +1,15 @@
+package com.protei.task.systemuser;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "presence.lifecycle")
+public class PresenceLifecycleProperties {
+    private long awayAfterMs = 300000L;
+    private long offlineAfterMs = 1800000L;
+}
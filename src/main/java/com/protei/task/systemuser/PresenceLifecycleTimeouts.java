@@ -0,0 +1,15 @@
+package com.protei.task.systemuser;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class PresenceLifecycleTimeouts {
+    private Long awayAfterMs;
+    private Long offlineAfterMs;
+}
@@ -0,0 +1,144 @@
+package com.protei.task.systemuser;
+
+import com.protei.task.scheduler.SchedulerService;
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
+import com.protei.task.util.LongArrayList;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+
+/**
+ * Re-arms presence timers of users left ONLINE or AWAY by a previous run, after
+ * {@link PresenceStore} has been warmed up. Runs on its own thread and walks those users in keyset
+ * pages, so the application serves traffic meanwhile. The time left is counted from last_seen; an
+ * AWAY user is taken to have gone AWAY when its ONLINE timeout passed. last_seen is only persisted
+ * every last-seen-resolution-ms, so the user may have been seen up to that much later; the time
+ * left is counted from the latest such moment, which can keep a user up to the resolution too
+ * long but never demotes one early. Users whose time is up get a zero delay and move on right
+ * away. Timers armed by fresh heartbeats are kept.
+ */
+@Slf4j
+@Component
+public class PresenceRecovery {
+    private static final String FIND_USERS =
+            "select id, user_status, last_seen from system_user " +
+                    "where user_status in ('ONLINE', 'AWAY') and id > ? order by id limit ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SchedulerService schedulerService;
+    private final PresenceLifecycle presenceLifecycle;
+    private final int pageSize;
+    private final long lastSeenResolutionMs;
+
+    @Autowired
+    public PresenceRecovery(JdbcTemplate jdbcTemplate,
+                            SchedulerService schedulerService,
+                            PresenceLifecycle presenceLifecycle,
+                            PresenceStoreProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.schedulerService = schedulerService;
+        this.presenceLifecycle = presenceLifecycle;
+        this.pageSize = properties.getRecoveryPageSize();
+        this.lastSeenResolutionMs = properties.getLastSeenResolutionMs();
+    }
+
+    @Order(1)
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        Thread thread = new Thread(this::recover, "presence-recovery");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void recover() {
+        long start = System.nanoTime();
+        Page online = new Page(pageSize);
+        Page away = new Page(pageSize);
+        long recovered = 0;
+        long expired = 0;
+        long afterId = 0;
+        try {
+            int count;
+            do {
+                long nowMs = System.currentTimeMillis();
+                long[] lastId = {afterId};
+                int[] size = new int[1];
+                online.clear();
+                away.clear();
+                jdbcTemplate.query(FIND_USERS, (RowCallbackHandler) row -> {
+                    long userId = row.getLong(1);
+                    SystemUserStatus status = SystemUserStatus.valueOf(row.getString(2));
+                    Timestamp lastSeen = row.getTimestamp(3);
+                    lastId[0] = userId;
+                    size[0]++;
+                    long timeoutMs = presenceLifecycle.getTimeoutMs(userId, status);
+                    if (timeoutMs == 0L) {
+                        return;
+                    }
+                    long idleMs = lastSeen == null
+                            ? Long.MAX_VALUE
+                            : Math.max(0L, nowMs - lastSeen.getTime() - lastSeenResolutionMs);
+                    if (status == SystemUserStatus.AWAY) {
+                        idleMs = Math.max(0L, idleMs - presenceLifecycle.getTimeoutMs(userId, SystemUserStatus.ONLINE));
+                    }
+                    (status == SystemUserStatus.ONLINE ? online : away).add(userId, Math.max(0L, timeoutMs - idleMs));
+                }, afterId, pageSize);
+                count = size[0];
+                if (count == 0) {
+                    break;
+                }
+                expired += online.arm(SystemUserStatus.ONLINE) + away.arm(SystemUserStatus.AWAY);
+                recovered += count;
+                afterId = lastId[0];
+            } while (count == pageSize);
+            log.info("Recovered presence timers of {} ONLINE and AWAY users, {} already expired, in {} ms",
+                    recovered, expired, (System.nanoTime() - start) / 1_000_000);
+        } catch (RuntimeException e) {
+            log.error("Presence recovery stopped after {} users", recovered, e);
+        }
+    }
+
+    private final class Page {
+        private final LongArrayList userIds;
+        private final LongArrayList delaysMs;
+
+        private Page(int capacity) {
+            this.userIds = new LongArrayList(capacity);
+            this.delaysMs = new LongArrayList(capacity);
+        }
+
+        private void add(long userId, long delayMs) {
+            userIds.add(userId);
+            delaysMs.add(delayMs);
+        }
+
+        private void clear() {
+            userIds.clear();
+            delaysMs.clear();
+        }
+
+        /**
+         * Arms the timers of the page and returns how many of them are already due.
+         */
+        private int arm(SystemUserStatus status) {
+            if (userIds.isEmpty()) {
+                return 0;
+            }
+            schedulerService.armPresenceTimersIfAbsent(userIds.toArray(), status, delaysMs.toArray());
+            int due = 0;
+            for (int i = 0; i < delaysMs.size(); i++) {
+                if (delaysMs.get(i) == 0L) {
+                    due++;
+                }
+            }
+            return due;
+        }
+    }
+}
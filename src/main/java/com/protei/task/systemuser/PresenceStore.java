@@ -0,0 +1,517 @@
+package com.protei.task.systemuser;
+
+import com.protei.task.scheduler.PresenceExpiryProperties;
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
+import com.protei.task.util.LongArrayList;
+import com.protei.task.util.LongByteHashMap;
+import com.protei.task.util.LongIntHashMap;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * In-memory presence status of every user. Status changes are applied here first and written to
+ * the system_user table in batches by {@link #flush()}, at most max-staleness-ms later. The same
+ * flush persists last_seen, recorded by {@link #touch(long)} with last-seen-resolution-ms precision
+ * so that frequent heartbeats don't turn into a write each.
+ *
+ * <p>The flush runs on its own thread, so other scheduled work can't hold it back. Each batch is
+ * a conditional UPDATE from the status the rows are believed to have; rows it misses are read
+ * back and queued again from the status they really have.
+ *
+ * <p>In the database expiry mode several nodes serve the same users, and a copy held here may miss
+ * a change made on another node, so status changes are written through instead: each one locks
+ * the user's row, moves it from the status it really has and publishes the transition to the
+ * other nodes' {@link PresenceSync} in one transaction, and only then updates the copy. A change
+ * therefore costs a transaction of its own, and only last_seen is left to the flush.
+ */
+@Slf4j
+@Component
+public class PresenceStore {
+    private static final byte MISSING = -1;
+    private static final int MISSING_SEEN = Integer.MIN_VALUE;
+    // last_seen is kept as int seconds since 2020-01-01, which lasts until 2088
+    private static final long SEEN_EPOCH_SECONDS = 1577836800L;
+    private static final String SELECT_STATUSES = "select id, user_status from system_user";
+    private static final int WARM_UP_FETCH_SIZE = 1000;
+    private static final String UPDATE_LAST_SEEN = "update system_user set last_seen = ? where id = ?";
+    private static final SystemUserStatus[] STATUSES = SystemUserStatus.values();
+    private static final Collection<SystemUserStatus> ANY_STATUS = EnumSet.allOf(SystemUserStatus.class);
+
+    private final SystemUserRepository systemUserRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean writeThrough;
+    private final PresenceChangeListener[] listeners;
+    private final Timer statusFlushTimer;
+    private final Timer lastSeenFlushTimer;
+    private final int batchSize;
+    private final int lastSeenResolutionSeconds;
+    private final long maxStalenessMs;
+    private final Stripe[] stripes;
+    private final int stripeMask;
+    private final Object flushLock = new Object();
+
+    private ScheduledExecutorService flusher;
+
+    @Autowired
+    public PresenceStore(SystemUserRepository systemUserRepository,
+                         JdbcTemplate jdbcTemplate,
+                         PlatformTransactionManager transactionManager,
+                         PresenceStoreProperties properties,
+                         PresenceExpiryProperties expiryProperties,
+                         ObjectProvider<PresenceChangeListener> listenerProvider,
+                         MeterRegistry meterRegistry) {
+        if (Integer.bitCount(properties.getStripes()) != 1) {
+            throw new IllegalArgumentException("Stripe count must be a power of two: " + properties.getStripes());
+        }
+        this.systemUserRepository = systemUserRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.writeThrough = "database".equals(expiryProperties.getEngine());
+        this.listeners = listenerProvider.orderedStream().toArray(PresenceChangeListener[]::new);
+        this.statusFlushTimer = meterRegistry.timer("presence.store.flush", "kind", "status");
+        this.lastSeenFlushTimer = meterRegistry.timer("presence.store.flush", "kind", "last_seen");
+        this.batchSize = properties.getBatchSize();
+        this.maxStalenessMs = properties.getMaxStalenessMs();
+        this.lastSeenResolutionSeconds = (int) (properties.getLastSeenResolutionMs() / 1000);
+        this.stripes = new Stripe[properties.getStripes()];
+        this.stripeMask = stripes.length - 1;
+        int stripeCapacity = Math.max(properties.getInitialCapacity() / stripes.length, 16);
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe(stripeCapacity);
+        }
+    }
+
+    public SystemUserStatus getStatus(long userId) {
+        Stripe stripe = stripeFor(userId);
+        synchronized (stripe) {
+            return toStatus(stripe.statuses.get(userId));
+        }
+    }
+
+    /**
+     * Records the persisted status of a user not held yet and returns the status held. A user
+     * without a status is OFFLINE, as new users are.
+     */
+    public SystemUserStatus load(long userId, SystemUserStatus status) {
+        SystemUserStatus loaded = status == null ? SystemUserStatus.OFFLINE : status;
+        Stripe stripe = stripeFor(userId);
+        synchronized (stripe) {
+            byte previous = stripe.statuses.get(userId);
+            if (previous != MISSING) {
+                return STATUSES[previous];
+            }
+            stripe.statuses.put(userId, toCode(loaded));
+            notifyListeners(userId, null, loaded);
+            return loaded;
+        }
+    }
+
+    public SystemUserStatus setStatus(long userId, SystemUserStatus status) {
+        if (writeThrough) {
+            return writeThrough(userId, ANY_STATUS, status);
+        }
+        Stripe stripe = stripeFor(userId);
+        synchronized (stripe) {
+            byte previous = stripe.statuses.get(userId);
+            if (previous != MISSING) {
+                change(stripe, userId, previous, status);
+            }
+            return toStatus(previous);
+        }
+    }
+
+    public boolean compareAndSet(long userId, SystemUserStatus expected, SystemUserStatus status) {
+        if (writeThrough) {
+            return writeThrough(userId, EnumSet.of(expected), status) == expected;
+        }
+        Stripe stripe = stripeFor(userId);
+        synchronized (stripe) {
+            byte previous = stripe.statuses.get(userId);
+            if (previous != toCode(expected)) {
+                return false;
+            }
+            change(stripe, userId, previous, status);
+            return true;
+        }
+    }
+
+    public SystemUserStatus compareAndSet(long userId,
+                                          Collection<SystemUserStatus> expected,
+                                          SystemUserStatus status) {
+        if (writeThrough) {
+            SystemUserStatus previous = writeThrough(userId, expected, status);
+            return previous != null && expected.contains(previous) ? previous : null;
+        }
+        Stripe stripe = stripeFor(userId);
+        synchronized (stripe) {
+            byte previous = stripe.statuses.get(userId);
+            if (previous == MISSING || !expected.contains(STATUSES[previous])) {
+                return null;
+            }
+            change(stripe, userId, previous, status);
+            return STATUSES[previous];
+        }
+    }
+
+    /**
+     * Sets the copy of a user, held or not, to the status its row was given elsewhere.
+     */
+    public void sync(long userId, SystemUserStatus status) {
+        Stripe stripe = stripeFor(userId);
+        synchronized (stripe) {
+            sync(stripe, userId, status);
+        }
+    }
+
+    public void remove(long userId) {
+        Stripe stripe = stripeFor(userId);
+        synchronized (stripe) {
+            byte previous = stripe.statuses.remove(userId);
+            stripe.dirty.remove(userId);
+            stripe.lastSeen.remove(userId);
+            stripe.seenDirty.remove(userId);
+            if (previous != MISSING) {
+                notifyListeners(userId, STATUSES[previous], null);
+            }
+        }
+    }
+
+    public void touch(long userId) {
+        int nowSeconds = (int) (System.currentTimeMillis() / 1000 - SEEN_EPOCH_SECONDS);
+        Stripe stripe = stripeFor(userId);
+        synchronized (stripe) {
+            int recorded = stripe.lastSeen.get(userId);
+            if (recorded == MISSING_SEEN || nowSeconds - recorded >= lastSeenResolutionSeconds) {
+                stripe.lastSeen.put(userId, nowSeconds);
+                stripe.seenDirty.put(userId, nowSeconds);
+            }
+        }
+    }
+
+    public long size() {
+        long size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.statuses.size();
+            }
+        }
+        return size;
+    }
+
+    @Order(0)
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void warmUp() {
+        long start = System.nanoTime();
+        readStatuses(this::load);
+        log.info("Loaded {} user statuses in {} ms", size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Syncs every user with the status of its row, for when changes made elsewhere may have been
+     * missed.
+     */
+    @Transactional(readOnly = true)
+    public void reload() {
+        readStatuses((userId, status) -> sync(userId, status == null ? SystemUserStatus.OFFLINE : status));
+        log.info("Reloaded {} user statuses", size());
+    }
+
+    @PostConstruct
+    public void start() {
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "presence-store-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::scheduledFlush, maxStalenessMs, maxStalenessMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes pending changes to system_user. Flushes don't overlap, so the last one on shutdown
+     * waits for a scheduled one still running.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            flushChanges();
+        }
+    }
+
+    @PreDestroy
+    public void preDestroy() {
+        flusher.shutdown();
+        flush();
+    }
+
+    private void scheduledFlush() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    private void flushChanges() {
+        LongArrayList[] changes = new LongArrayList[STATUSES.length * STATUSES.length];
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.drainDirty(changes);
+            }
+        }
+        for (int i = 0; i < changes.length; i++) {
+            if (changes[i] != null) {
+                flush(changes[i], STATUSES[i / STATUSES.length], STATUSES[i % STATUSES.length]);
+            }
+        }
+        List<Object[]> lastSeen = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.drainSeenDirty(lastSeen);
+            }
+        }
+        for (int offset = 0; offset < lastSeen.size(); offset += batchSize) {
+            flushLastSeen(lastSeen.subList(offset, Math.min(offset + batchSize, lastSeen.size())));
+        }
+    }
+
+    private void flush(LongArrayList userIds, SystemUserStatus from, SystemUserStatus to) {
+        for (int offset = 0; offset < userIds.size(); offset += batchSize) {
+            int end = Math.min(offset + batchSize, userIds.size());
+            List<Long> batch = new ArrayList<>(end - offset);
+            for (int i = offset; i < end; i++) {
+                batch.add(userIds.get(i));
+            }
+            long start = System.nanoTime();
+            int updated;
+            try {
+                updated = systemUserRepository.transitionSystemUserStatuses(batch, EnumSet.of(from), to);
+            } catch (RuntimeException e) {
+                log.error("Failed to flush {} -> {} for {} users", from, to, batch.size(), e);
+                batch.forEach(userId -> markDirty(userId, from));
+                continue;
+            }
+            long elapsed = System.nanoTime() - start;
+            statusFlushTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            log.debug("Flushed {} -> {} for {} of {} users in {} ms",
+                    from, to, updated, batch.size(), elapsed / 1_000_000);
+            if (updated < batch.size()) {
+                reconcile(batch, to);
+            }
+        }
+    }
+
+    /**
+     * Queues users whose row wasn't in the expected status again from the status it has, so the
+     * next flush moves it to the current one. Rows of deleted users are gone and skipped.
+     */
+    private void reconcile(List<Long> batch, SystemUserStatus to) {
+        try {
+            int reconciled = 0;
+            for (SystemUserStatusView view : systemUserRepository.findSystemUserStatusesByIds(batch)) {
+                SystemUserStatus persisted = view.getUserStatus() == null
+                        ? SystemUserStatus.OFFLINE
+                        : view.getUserStatus();
+                if (persisted != to) {
+                    markDirty(view.getId(), persisted);
+                    reconciled++;
+                }
+            }
+            if (reconciled > 0) {
+                log.warn("Reconciled the persisted status of {} users", reconciled);
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to reconcile the persisted status of {} users", batch.size(), e);
+        }
+    }
+
+    /**
+     * Moves the row of the user to status if its status is one of expected and publishes the
+     * transition, then syncs the copy with the row; a change is applied here while the row is
+     * still locked, so changes of a user made on this node are applied in the order they were
+     * made. Returns the status the row had, or null if the user doesn't exist.
+     */
+    private SystemUserStatus writeThrough(long userId, Collection<SystemUserStatus> expected, SystemUserStatus status) {
+        return transactionTemplate.execute(transaction -> {
+            SystemUserStatus persisted = systemUserRepository.lockSystemUserStatus(userId)
+                    .map(SystemUserStatus::valueOf)
+                    .orElse(null);
+            if (persisted == null) {
+                remove(userId);
+                return null;
+            }
+            boolean changed = persisted != status && expected.contains(persisted);
+            if (changed) {
+                systemUserRepository.transitionSystemUserStatuses(
+                        Collections.singletonList(userId), EnumSet.of(persisted), status);
+                jdbcTemplate.queryForObject(PresenceSync.NOTIFY, String.class, PresenceSync.toPayload(userId, status));
+            }
+            Stripe stripe = stripeFor(userId);
+            synchronized (stripe) {
+                sync(stripe, userId, persisted);
+                if (changed) {
+                    stripe.statuses.put(userId, toCode(status));
+                    notifyListeners(userId, persisted, status);
+                }
+            }
+            return persisted;
+        });
+    }
+
+    private void sync(Stripe stripe, long userId, SystemUserStatus status) {
+        byte previous = stripe.statuses.get(userId);
+        if (previous != toCode(status)) {
+            stripe.statuses.put(userId, toCode(status));
+            for (PresenceChangeListener listener : listeners) {
+                listener.onStatusSynced(userId, toStatus(previous), status);
+            }
+        }
+    }
+
+    private void readStatuses(BiConsumer<Long, SystemUserStatus> consumer) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(SELECT_STATUSES);
+            statement.setFetchSize(WARM_UP_FETCH_SIZE);
+            return statement;
+        }, (RowCallbackHandler) row -> {
+            String status = row.getString(2);
+            consumer.accept(row.getLong(1), status == null ? null : SystemUserStatus.valueOf(status));
+        });
+    }
+
+    private void change(Stripe stripe, long userId, byte previous, SystemUserStatus status) {
+        if (stripe.change(userId, previous, toCode(status))) {
+            notifyListeners(userId, STATUSES[previous], status);
+        }
+    }
+
+    private void notifyListeners(long userId, SystemUserStatus previous, SystemUserStatus status) {
+        for (PresenceChangeListener listener : listeners) {
+            listener.onStatusChanged(userId, previous, status);
+        }
+    }
+
+    private void flushLastSeen(List<Object[]> batch) {
+        long start = System.nanoTime();
+        try {
+            jdbcTemplate.batchUpdate(UPDATE_LAST_SEEN, batch);
+            lastSeenFlushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        } catch (RuntimeException e) {
+            log.error("Failed to flush last seen of {} users", batch.size(), e);
+            for (Object[] parameters : batch) {
+                long userId = (Long) parameters[1];
+                Stripe stripe = stripeFor(userId);
+                synchronized (stripe) {
+                    if (!stripe.seenDirty.containsKey(userId)) {
+                        stripe.seenDirty.put(userId, stripe.lastSeen.get(userId));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Records the status the row has; it replaces the one recorded by a change made since the
+     * drain, which was the status this flush failed to write.
+     */
+    private void markDirty(long userId, SystemUserStatus persisted) {
+        Stripe stripe = stripeFor(userId);
+        synchronized (stripe) {
+            if (stripe.statuses.containsKey(userId)) {
+                stripe.dirty.put(userId, toCode(persisted));
+            }
+        }
+    }
+
+    private Stripe stripeFor(long userId) {
+        return stripes[(int) (userId & stripeMask)];
+    }
+
+    private static byte toCode(SystemUserStatus status) {
+        return (byte) status.ordinal();
+    }
+
+    private static SystemUserStatus toStatus(byte code) {
+        return code == MISSING ? null : STATUSES[code];
+    }
+
+    private static final class Stripe {
+        private final LongByteHashMap statuses;
+        private final LongIntHashMap lastSeen;
+        private LongByteHashMap dirty;
+        private LongByteHashMap draining;
+        private LongIntHashMap seenDirty;
+
+        private Stripe(int capacity) {
+            statuses = new LongByteHashMap(capacity, MISSING);
+            lastSeen = new LongIntHashMap(16, MISSING_SEEN);
+            dirty = new LongByteHashMap(16, MISSING);
+            draining = new LongByteHashMap(16, MISSING);
+            seenDirty = new LongIntHashMap(16, MISSING_SEEN);
+        }
+
+        private boolean change(long userId, byte previous, byte status) {
+            if (previous == status) {
+                return false;
+            }
+            statuses.put(userId, status);
+            if (!dirty.containsKey(userId)) {
+                dirty.put(userId, previous);
+            }
+            return true;
+        }
+
+        private void drainDirty(LongArrayList[] changes) {
+            LongByteHashMap drained = dirty;
+            dirty = draining;
+            draining = drained;
+            drained.forEach((userId, persisted) -> {
+                byte current = statuses.get(userId);
+                if (current != persisted) {
+                    int group = persisted * STATUSES.length + current;
+                    if (changes[group] == null) {
+                        changes[group] = new LongArrayList();
+                    }
+                    changes[group].add(userId);
+                }
+            });
+            drained.clear();
+        }
+
+        private void drainSeenDirty(List<Object[]> lastSeen) {
+            if (seenDirty.isEmpty()) {
+                return;
+            }
+            seenDirty.forEach((userId, seconds) -> lastSeen.add(new Object[]{
+                    Timestamp.from(Instant.ofEpochSecond(SEEN_EPOCH_SECONDS + seconds)), userId}));
+            seenDirty = new LongIntHashMap(16, MISSING_SEEN);
+        }
+    }
+}
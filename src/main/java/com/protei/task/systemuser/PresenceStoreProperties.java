@@ -0,0 +1,19 @@
+package com.protei.task.systemuser;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "presence.store")
+public class PresenceStoreProperties {
+    private long maxStalenessMs = 1000L;
+    private int batchSize = 500;
+    private int stripes = 16;
+    private int initialCapacity = 1024;
+    private long lastSeenResolutionMs = 30000L;
+    private int recoveryPageSize = 5000;
+}
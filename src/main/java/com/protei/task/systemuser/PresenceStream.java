@@ -0,0 +1,210 @@
+package com.protei.task.systemuser;
+
+import com.protei.task.exception.TooManySubscribersException;
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
+import com.protei.task.util.LongByteHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes presence status transitions to SSE subscribers. Every subscriber has its own buffer that
+ * keeps only the latest status per user, so a slow client receives fewer, coalesced events instead
+ * of stalling the writers. When the buffer is full, changes for further users are dropped and the
+ * client gets a {@value #RESYNC_EVENT} event telling it to reload the statuses it cares about.
+ */
+@Slf4j
+@Component
+public class PresenceStream implements PresenceChangeListener {
+    public static final String PRESENCE_EVENT = "presence";
+    public static final String RESYNC_EVENT = "resync";
+
+    private static final byte MISSING = -1;
+    private static final SystemUserStatus[] STATUSES = SystemUserStatus.values();
+    private static final String TOO_MANY_SUBSCRIBERS = "Presence stream has reached %s subscribers!";
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final long flushIntervalMs;
+    private final long keepAliveMs;
+    private final long timeoutMs;
+    private final int bufferSize;
+    private final int maxSubscribers;
+    private final int senderThreads;
+
+    private ScheduledExecutorService dispatcher;
+    private ExecutorService senders;
+
+    @Autowired
+    public PresenceStream(PresenceStreamProperties properties) {
+        this.flushIntervalMs = properties.getFlushIntervalMs();
+        this.keepAliveMs = properties.getKeepAliveMs();
+        this.timeoutMs = properties.getTimeoutMs();
+        this.bufferSize = properties.getBufferSize();
+        this.maxSubscribers = properties.getMaxSubscribers();
+        this.senderThreads = properties.getSenderThreads();
+    }
+
+    public SseEmitter subscribe(Collection<Long> userIds) {
+        if (subscribers.size() >= maxSubscribers) {
+            throw new TooManySubscribersException(String.format(TOO_MANY_SUBSCRIBERS, maxSubscribers));
+        }
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Subscriber subscriber = new Subscriber(emitter, toSortedArray(userIds), bufferSize);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(e -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        return emitter;
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    @Override
+    public void onStatusChanged(long userId, SystemUserStatus previous, SystemUserStatus status) {
+        if (status == null) {
+            return;
+        }
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.accepts(userId)) {
+                subscriber.offer(userId, status);
+            }
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger senderNumber = new AtomicInteger();
+        senders = Executors.newFixedThreadPool(senderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "presence-stream-" + senderNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        dispatcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "presence-stream-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dispatcher.scheduleWithFixedDelay(this::dispatch, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        dispatcher.shutdownNow();
+        senders.shutdownNow();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.emitter.complete();
+        }
+        subscribers.clear();
+    }
+
+    private void dispatch() {
+        long nowMs = System.currentTimeMillis();
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.isDue(nowMs, keepAliveMs) && subscriber.sending.compareAndSet(false, true)) {
+                senders.execute(() -> send(subscriber));
+            }
+        }
+    }
+
+    private void send(Subscriber subscriber) {
+        LongByteHashMap batch = subscriber.drain();
+        boolean resync = subscriber.takeOverflow();
+        try {
+            if (!batch.isEmpty()) {
+                List<SystemUserPresence> events = new ArrayList<>(batch.size());
+                batch.forEach((userId, status) -> events.add(new SystemUserPresence(userId, STATUSES[status])));
+                subscriber.emitter.send(SseEmitter.event().name(PRESENCE_EVENT).data(events, MediaType.APPLICATION_JSON));
+            }
+            if (resync) {
+                subscriber.emitter.send(SseEmitter.event().name(RESYNC_EVENT).data(""));
+            }
+            if (batch.isEmpty() && !resync) {
+                subscriber.emitter.send(SseEmitter.event().comment("keep-alive"));
+            }
+            subscriber.lastSentMs = System.currentTimeMillis();
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Dropping presence stream subscriber: {}", e.getMessage());
+            subscribers.remove(subscriber);
+            subscriber.emitter.completeWithError(e);
+        } finally {
+            batch.clear();
+            subscriber.sending.set(false);
+        }
+    }
+
+    private static long[] toSortedArray(Collection<Long> userIds) {
+        if (userIds == null || userIds.isEmpty()) {
+            return null;
+        }
+        long[] sorted = userIds.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static final class Subscriber {
+        private final SseEmitter emitter;
+        private final long[] userIds;
+        private final int bufferSize;
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private LongByteHashMap pending;
+        private LongByteHashMap draining;
+        private boolean overflowed;
+        private volatile long lastSentMs = System.currentTimeMillis();
+
+        private Subscriber(SseEmitter emitter, long[] userIds, int bufferSize) {
+            this.emitter = emitter;
+            this.userIds = userIds;
+            this.bufferSize = bufferSize;
+            this.pending = new LongByteHashMap(16, MISSING);
+            this.draining = new LongByteHashMap(16, MISSING);
+        }
+
+        private boolean accepts(long userId) {
+            return userIds == null || Arrays.binarySearch(userIds, userId) >= 0;
+        }
+
+        private synchronized void offer(long userId, SystemUserStatus status) {
+            if (pending.size() < bufferSize || pending.containsKey(userId)) {
+                pending.put(userId, (byte) status.ordinal());
+            } else {
+                overflowed = true;
+            }
+        }
+
+        private synchronized boolean isDue(long nowMs, long keepAliveMs) {
+            return !pending.isEmpty() || overflowed || nowMs - lastSentMs >= keepAliveMs;
+        }
+
+        private synchronized LongByteHashMap drain() {
+            LongByteHashMap drained = pending;
+            pending = draining;
+            draining = drained;
+            return drained;
+        }
+
+        private synchronized boolean takeOverflow() {
+            boolean result = overflowed;
+            overflowed = false;
+            return result;
+        }
+    }
+}
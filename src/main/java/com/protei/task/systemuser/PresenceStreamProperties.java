@@ -0,0 +1,19 @@
+package com.protei.task.systemuser;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "presence.stream")
+public class PresenceStreamProperties {
+    private long flushIntervalMs = 200L;
+    private long keepAliveMs = 15000L;
+    private long timeoutMs = 1800000L;
+    private int bufferSize = 1024;
+    private int maxSubscribers = 1000;
+    private int senderThreads = 4;
+}
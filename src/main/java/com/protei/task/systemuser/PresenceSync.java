@@ -0,0 +1,131 @@
+package com.protei.task.systemuser;
+
+import com.protei.task.scheduler.PresenceExpiryProperties;
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Keeps the {@link PresenceStore} of this node in step with the other nodes in the database
+ * expiry mode. There every status transition is written through to system_user together with a
+ * pg_notify on the presence_changed channel, and this listener applies each notification to the
+ * local store. Notifications arrive in commit order, including the ones of this node, so the last
+ * one of a user carries the status its row has; a copy is only stale for the time a notification
+ * takes to arrive. Notifications sent while the listener was reconnecting are lost, so every status
+ * is read again after a reconnect. LISTEN holds its connection for as long as the node runs, so it
+ * gets a dedicated one outside the pool, opened before the store is warmed up so that no change
+ * committed meanwhile is missed.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "presence.expiry.engine", havingValue = "database")
+public class PresenceSync {
+    static final String CHANNEL = "presence_changed";
+    static final String NOTIFY = "select pg_notify('" + CHANNEL + "', ?)";
+    private static final String LISTEN = "listen " + CHANNEL;
+    private static final char PAYLOAD_STATUS_SEPARATOR = ':';
+
+    private final DataSourceProperties dataSourceProperties;
+    private final PresenceStore presenceStore;
+    private final long pollMs;
+
+    private Thread listener;
+    private volatile boolean running;
+
+    @Autowired
+    public PresenceSync(DataSourceProperties dataSourceProperties,
+                        PresenceStore presenceStore,
+                        PresenceExpiryProperties properties) {
+        this.dataSourceProperties = dataSourceProperties;
+        this.presenceStore = presenceStore;
+        this.pollMs = properties.getPollMs();
+    }
+
+    static String toPayload(long userId, SystemUserStatus status) {
+        return status.name() + PAYLOAD_STATUS_SEPARATOR + userId;
+    }
+
+    @PostConstruct
+    public void start() {
+        Connection connection;
+        try {
+            connection = listen();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to listen to " + CHANNEL, e);
+        }
+        running = true;
+        listener = new Thread(() -> receive(connection), "presence-sync");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (listener != null) {
+            listener.interrupt();
+        }
+    }
+
+    void onNotification(String payload) {
+        int separator = payload.indexOf(PAYLOAD_STATUS_SEPARATOR);
+        SystemUserStatus status = SystemUserStatus.valueOf(payload.substring(0, separator));
+        presenceStore.sync(Long.parseLong(payload.substring(separator + 1)), status);
+    }
+
+    private void receive(Connection first) {
+        Connection connection = first;
+        while (running) {
+            try (Connection listening = connection != null ? connection : listen()) {
+                if (connection == null) {
+                    presenceStore.reload();
+                }
+                connection = null;
+                PGConnection pgConnection = listening.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications((int) pollMs);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            onNotification(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                connection = null;
+                if (!running) {
+                    return;
+                }
+                log.error("Presence sync listener failed, reconnecting: {}", e.getMessage());
+                try {
+                    Thread.sleep(pollMs);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private Connection listen() throws SQLException {
+        Connection connection = DriverManager.getConnection(dataSourceProperties.determineUrl(),
+                dataSourceProperties.determineUsername(), dataSourceProperties.determinePassword());
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(LISTEN);
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        return connection;
+    }
+}
@@ -0,0 +1,225 @@
+package com.protei.task.systemuser;
+
+import com.protei.task.scheduler.SchedulerService;
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
+import com.protei.task.util.LongArrayList;
+import com.protei.task.util.LongByteHashMap;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Defers the presence timer work of explicit status changes by up to debounce-ms and keeps only
+ * the latest status per user, so a client flapping between ONLINE and OFFLINE costs one arm or
+ * cancel per window instead of one per change. The presence store is still updated immediately;
+ * only the timer follows the final state. Each user's timer is armed for its status with the
+ * {@link PresenceLifecycle} timeout, or cancelled if the status has none. Pending changes are
+ * applied with one batched arm per status and one batched cancel, for the status each user has
+ * in the presence store when they are applied rather than the queued one. A debounce-ms of 0
+ * applies every change right away.
+ *
+ * <p>Heartbeats and updates that keep the status are applied right away through
+ * {@link #applyNow}: a timer that fired meanwhile is only waiting to be flushed by the expiry
+ * engine, which skips users armed again, so a deferred re-arm would let the user be demoted
+ * after the request was acknowledged.
+ */
+@Slf4j
+@Component
+public class PresenceTimerCoalescer {
+    private static final byte MISSING = -1;
+    private static final SystemUserStatus[] STATUSES = SystemUserStatus.values();
+
+    private final SchedulerService schedulerService;
+    private final PresenceStore presenceStore;
+    private final PresenceLifecycle presenceLifecycle;
+    private final long debounceMs;
+    private final Counter coalescedCounter;
+    private final Object lock = new Object();
+
+    private LongByteHashMap pending = new LongByteHashMap(1024, MISSING);
+    private LongByteHashMap draining = new LongByteHashMap(1024, MISSING);
+    private ScheduledExecutorService flusher;
+
+    @Autowired
+    public PresenceTimerCoalescer(SchedulerService schedulerService,
+                                  PresenceStore presenceStore,
+                                  PresenceLifecycle presenceLifecycle,
+                                  StatusUpdateProperties properties,
+                                  MeterRegistry meterRegistry) {
+        this.schedulerService = schedulerService;
+        this.presenceStore = presenceStore;
+        this.presenceLifecycle = presenceLifecycle;
+        this.debounceMs = properties.getDebounceMs();
+        this.coalescedCounter = meterRegistry.counter("presence.status.coalesced");
+    }
+
+    public void submit(long userId, SystemUserStatus status) {
+        if (debounceMs <= 0) {
+            apply(userId, status);
+            return;
+        }
+        byte previous;
+        synchronized (lock) {
+            previous = pending.put(userId, (byte) status.ordinal());
+        }
+        if (previous != MISSING) {
+            coalescedCounter.increment();
+        }
+    }
+
+    /**
+     * Applies the timer of status at once, dropping any change of the user still pending.
+     */
+    public void applyNow(long userId, SystemUserStatus status) {
+        if (debounceMs > 0) {
+            synchronized (lock) {
+                pending.remove(userId);
+            }
+        }
+        apply(userId, status);
+    }
+
+    /**
+     * Applies the timers of userIds, kept in status by a bulk update, at once.
+     */
+    public void applyAllNow(LongArrayList userIds, SystemUserStatus status) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        if (debounceMs > 0) {
+            synchronized (lock) {
+                for (int i = 0; i < userIds.size(); i++) {
+                    pending.remove(userIds.get(i));
+                }
+            }
+        }
+        apply(userIds, status);
+    }
+
+    /**
+     * Submits the changes of a bulk update that moved userIds to status.
+     */
+    public void submitAll(LongArrayList userIds, SystemUserStatus status) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        if (debounceMs <= 0) {
+            apply(userIds, status);
+            return;
+        }
+        int coalesced = 0;
+        byte code = (byte) status.ordinal();
+        synchronized (lock) {
+            for (int i = 0; i < userIds.size(); i++) {
+                if (pending.put(userIds.get(i), code) != MISSING) {
+                    coalesced++;
+                }
+            }
+        }
+        coalescedCounter.increment(coalesced);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (debounceMs <= 0) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "presence-timer-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, debounceMs, debounceMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdown();
+        if (flusher.awaitTermination(debounceMs, TimeUnit.MILLISECONDS)) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        synchronized (lock) {
+            LongByteHashMap full = pending;
+            pending = draining;
+            draining = full;
+        }
+        if (draining.isEmpty()) {
+            return;
+        }
+        LongArrayList[] userIds = new LongArrayList[STATUSES.length];
+        for (int i = 0; i < userIds.length; i++) {
+            userIds[i] = new LongArrayList();
+        }
+        int size = draining.size();
+        // The status may have moved on since it was queued, e.g. by an expiry or a compare-and-set,
+        // and the timer must match the stored one; users deleted meanwhile are dropped
+        draining.forEach((userId, queued) -> {
+            SystemUserStatus status = presenceStore.getStatus(userId);
+            if (status != null) {
+                userIds[status.ordinal()].add(userId);
+            }
+        });
+        draining.clear();
+        try {
+            for (SystemUserStatus status : STATUSES) {
+                apply(userIds[status.ordinal()], status);
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to apply {} coalesced presence timer changes", size, e);
+        }
+    }
+
+    private void apply(long userId, SystemUserStatus status) {
+        long timeoutMs = presenceLifecycle.getTimeoutMs(userId, status);
+        if (status == SystemUserStatus.ONLINE) {
+            presenceStore.touch(userId);
+        }
+        if (timeoutMs > 0) {
+            schedulerService.armPresenceTimer(userId, status, timeoutMs);
+        } else {
+            schedulerService.cancelPresenceTimer(userId);
+        }
+    }
+
+    private void apply(LongArrayList userIds, SystemUserStatus status) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        LongArrayList armIds = new LongArrayList(userIds.size());
+        LongArrayList delaysMs = new LongArrayList(userIds.size());
+        LongArrayList cancelIds = new LongArrayList();
+        for (int i = 0; i < userIds.size(); i++) {
+            long userId = userIds.get(i);
+            long timeoutMs = presenceLifecycle.getTimeoutMs(userId, status);
+            if (status == SystemUserStatus.ONLINE) {
+                presenceStore.touch(userId);
+            }
+            if (timeoutMs > 0) {
+                armIds.add(userId);
+                delaysMs.add(timeoutMs);
+            } else {
+                cancelIds.add(userId);
+            }
+        }
+        if (!armIds.isEmpty()) {
+            schedulerService.armPresenceTimers(armIds.toArray(), status, delaysMs.toArray());
+        }
+        if (!cancelIds.isEmpty()) {
+            schedulerService.cancelPresenceTimers(cancelIds.toArray());
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.protei.task.systemuser;
+
+import com.protei.task.util.TokenBucketTable;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Per-user token bucket for explicit status updates: a user may change status burst times in a
+ * row and rate-per-second times a second after that. Buckets live in a fixed-size
+ * {@link TokenBucketTable}, so idle users cost nothing and the memory use doesn't grow with them.
+ */
+@Component
+public class StatusUpdateLimiter {
+    private final TokenBucketTable buckets;
+    private final Counter rejectedCounter;
+
+    @Autowired
+    public StatusUpdateLimiter(StatusUpdateProperties properties, MeterRegistry meterRegistry) {
+        this.buckets = new TokenBucketTable(properties.getLimiterSize(), properties.getRatePerSecond(),
+                properties.getBurst());
+        this.rejectedCounter = meterRegistry.counter("presence.status.rejected");
+    }
+
+    public boolean tryAcquire(long userId) {
+        if (buckets.tryTake(userId)) {
+            return true;
+        }
+        rejectedCounter.increment();
+        return false;
+    }
+}
@@ -0,0 +1,17 @@
+package com.protei.task.systemuser;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "systemuser.status-update")
+public class StatusUpdateProperties {
+    private long debounceMs = 200L;
+    private double ratePerSecond = 5.0;
+    private int burst = 10;
+    private int limiterSize = 65536;
+}
@@ -1,19 +1,30 @@
 package com.protei.task.systemuser;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.protei.task.systemuser.enumeration.SystemUserStatus;
 import lombok.*;
+import org.hibernate.annotations.DynamicUpdate;
 
 import javax.persistence.*;
+import java.time.Instant;
 import java.util.Objects;
 
 @Entity
-@Table
+@DynamicUpdate
+@Table(indexes = {
+        @Index(name = SystemUser.EMAIL_UNIQUE_INDEX, columnList = "email", unique = true),
+        @Index(name = SystemUser.PHONE_NUMBER_UNIQUE_INDEX, columnList = "phoneNumber", unique = true),
+        @Index(name = "system_user_user_status_id_idx", columnList = "userStatus, id")
+})
 @Getter
 @Setter
 @ToString
 @AllArgsConstructor
 @NoArgsConstructor
 public class SystemUser {
+    public static final String EMAIL_UNIQUE_INDEX = "system_user_email_key";
+    public static final String PHONE_NUMBER_UNIQUE_INDEX = "system_user_phone_number_key";
+
     @Id
     @SequenceGenerator(
             name = "user_sequence",
@@ -32,6 +43,14 @@ public class SystemUser {
     @Enumerated(EnumType.STRING)
     private SystemUserStatus userStatus;
 
+    @JsonIgnore
+    @Column(columnDefinition = "timestamp with time zone")
+    private Instant lastSeen;
+
+    @Version
+    @Column(columnDefinition = "bigint default 0 not null")
+    private long version;
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
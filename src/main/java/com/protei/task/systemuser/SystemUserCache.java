@@ -0,0 +1,94 @@
+package com.protei.task.systemuser;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.LongFunction;
+
+@Slf4j
+@Component
+public class SystemUserCache {
+    private final Cache<Long, SystemUser> users;
+    private final Cache<Long, Boolean> missingUsers;
+
+    @Autowired
+    public SystemUserCache(SystemUserCacheProperties properties) {
+        this.users = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(Duration.ofMillis(properties.getExpireAfterWriteMs()))
+                .recordStats()
+                .build();
+        this.missingUsers = properties.isNegativeCaching()
+                ? Caffeine.newBuilder()
+                .maximumSize(properties.getNegativeMaximumSize())
+                .expireAfterWrite(Duration.ofMillis(properties.getNegativeExpireAfterWriteMs()))
+                .recordStats()
+                .build()
+                : null;
+    }
+
+    public SystemUser get(long userId, LongFunction<Optional<SystemUser>> loader) {
+        if (missingUsers != null && missingUsers.getIfPresent(userId) != null) {
+            return null;
+        }
+        SystemUser user = users.get(userId, id -> loader.apply(id).map(SystemUserCache::copyOf).orElse(null));
+        if (user == null) {
+            if (missingUsers != null) {
+                missingUsers.put(userId, Boolean.TRUE);
+            }
+            return null;
+        }
+        return copyOf(user);
+    }
+
+    public void invalidate(long userId) {
+        users.invalidate(userId);
+        if (missingUsers != null) {
+            missingUsers.invalidate(userId);
+        }
+    }
+
+    public void invalidateAfterCommit(long userId) {
+        invalidate(userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    invalidate(userId);
+                }
+            });
+        }
+    }
+
+    public CacheStats getStats() {
+        return users.stats();
+    }
+
+    public CacheStats getMissingStats() {
+        return missingUsers == null ? CacheStats.empty() : missingUsers.stats();
+    }
+
+    @Scheduled(fixedDelayString = "${systemuser.cache.stats-log-interval-ms:60000}")
+    public void logStats() {
+        CacheStats stats = users.stats();
+        if (stats.requestCount() > 0) {
+            log.info("User cache: size {}, hit rate {}, evictions {}, negative hits {}",
+                    users.estimatedSize(), String.format("%.3f", stats.hitRate()), stats.evictionCount(),
+                    getMissingStats().hitCount());
+        }
+    }
+
+    private static SystemUser copyOf(SystemUser user) {
+        return new SystemUser(user.getId(), user.getName(), user.getEmail(), user.getPhoneNumber(),
+                user.getUserStatus(), user.getLastSeen(), user.getVersion());
+    }
+}
@@ -0,0 +1,19 @@
+package com.protei.task.systemuser;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "systemuser.cache")
+public class SystemUserCacheProperties {
+    private long maximumSize = 100000L;
+    private long expireAfterWriteMs = 60000L;
+    private boolean negativeCaching = true;
+    private long negativeMaximumSize = 10000L;
+    private long negativeExpireAfterWriteMs = 5000L;
+    private long statsLogIntervalMs = 60000L;
+}
@@ -0,0 +1,153 @@
+package com.protei.task.systemuser;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Brings contacts of existing users in line with the unique email and phone number indexes before
+ * the application serves requests. The schema update creates those indexes quietly, so they are
+ * missing when duplicates exist; this finds users whose email or phone number repeats one of an
+ * earlier user and fails startup listing them, or, with clear-duplicates set, clears the repeated
+ * contact of every user but the earliest. Contacts are compared and then stored the way new ones
+ * are: emails trimmed and lower-cased, phone numbers in E.164 when they parse, so a number written
+ * differently still counts as a repeat. Last, the indexes are created if missing, where a failure
+ * does stop startup.
+ */
+@Slf4j
+@Component
+@DependsOn("entityManagerFactory")
+public class SystemUserContactMigration {
+    private static final String FIND_DUPLICATE_EMAILS =
+            "select id from (select id, row_number() over (" +
+                    "partition by lower(trim(email)) order by id) as n " +
+                    "from system_user where email is not null) d where n > 1 order by id";
+    // Anything but + and digits is a number stored before phone numbers were normalized
+    private static final String FIND_UNNORMALIZED_PHONE_NUMBERS =
+            "select id, phone_number from system_user where phone_number !~ '^\\+[0-9]+$'";
+    private static final String FIND_DUPLICATE_PHONE_NUMBERS =
+            "select id from (select u.id, row_number() over (" +
+                    "partition by coalesce(p.phone_number, u.phone_number) order by u.id) as n " +
+                    "from system_user u left join unnest(?::bigint[], ?::varchar[]) as p(id, phone_number) " +
+                    "on p.id = u.id where u.phone_number is not null) d where n > 1 order by id";
+    private static final String NORMALIZE_PHONE_NUMBERS =
+            "update system_user u set phone_number = p.phone_number " +
+                    "from unnest(?::bigint[], ?::varchar[]) as p(id, phone_number) " +
+                    "where u.id = p.id and u.phone_number is not null";
+    private static final String CLEAR_EMAILS = "update system_user set email = null where id = any(?)";
+    private static final String CLEAR_PHONE_NUMBERS = "update system_user set phone_number = null where id = any(?)";
+    private static final String NORMALIZE_EMAILS =
+            "update system_user set email = lower(trim(email)) where email <> lower(trim(email))";
+    private static final String CREATE_UNIQUE_INDEX = "create unique index if not exists %s on system_user (%s)";
+    private static final int LISTED_IDS = 20;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PhoneNumberNormalizer phoneNumberNormalizer;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean clearDuplicates;
+
+    @Autowired
+    public SystemUserContactMigration(JdbcTemplate jdbcTemplate,
+                                      PhoneNumberNormalizer phoneNumberNormalizer,
+                                      PlatformTransactionManager transactionManager,
+                                      SystemUserContactProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.phoneNumberNormalizer = phoneNumberNormalizer;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.clearDuplicates = properties.isClearDuplicates();
+    }
+
+    @PostConstruct
+    public void migrate() {
+        transactionTemplate.executeWithoutResult(transaction -> {
+            List<Long> phoneNumberIds = new ArrayList<>();
+            List<String> phoneNumbers = new ArrayList<>();
+            findNormalizedPhoneNumbers(phoneNumberIds, phoneNumbers);
+            List<Long> duplicateEmails = jdbcTemplate.queryForList(FIND_DUPLICATE_EMAILS, Long.class);
+            List<Long> duplicatePhoneNumbers = jdbcTemplate.query(FIND_DUPLICATE_PHONE_NUMBERS,
+                    preparedStatement -> setIdsAndPhoneNumbers(preparedStatement, phoneNumberIds, phoneNumbers),
+                    (row, rowNum) -> row.getLong(1));
+            if (!duplicateEmails.isEmpty() || !duplicatePhoneNumbers.isEmpty()) {
+                String duplicates = String.format("%d users repeat the email of an earlier user (ids %s) and %d " +
+                                "the phone number (ids %s)",
+                        duplicateEmails.size(), listed(duplicateEmails),
+                        duplicatePhoneNumbers.size(), listed(duplicatePhoneNumbers));
+                if (!clearDuplicates) {
+                    throw new IllegalStateException(duplicates + "; clear them or set " +
+                            "systemuser.contacts.clear-duplicates=true to clear their repeated contacts");
+                }
+                log.warn("{}; clearing their repeated contacts", duplicates);
+                clear(CLEAR_EMAILS, duplicateEmails);
+                clear(CLEAR_PHONE_NUMBERS, duplicatePhoneNumbers);
+            }
+            int normalized = jdbcTemplate.update(NORMALIZE_EMAILS);
+            if (normalized > 0) {
+                log.info("Normalized the emails of {} users", normalized);
+            }
+            if (!phoneNumberIds.isEmpty()) {
+                normalized = jdbcTemplate.update(NORMALIZE_PHONE_NUMBERS,
+                        preparedStatement -> setIdsAndPhoneNumbers(preparedStatement, phoneNumberIds, phoneNumbers));
+                log.info("Normalized the phone numbers of {} users", normalized);
+            }
+            createUniqueIndex(SystemUser.EMAIL_UNIQUE_INDEX, "email");
+            createUniqueIndex(SystemUser.PHONE_NUMBER_UNIQUE_INDEX, "phone_number");
+        });
+    }
+
+    /**
+     * Collects the users whose stored phone number isn't in E.164 with the number it normalizes to.
+     * Numbers that don't parse are kept as they are and only counted.
+     */
+    private void findNormalizedPhoneNumbers(List<Long> userIds, List<String> phoneNumbers) {
+        int[] invalid = new int[1];
+        jdbcTemplate.query(FIND_UNNORMALIZED_PHONE_NUMBERS, (RowCallbackHandler) row -> {
+            String normalized = phoneNumberNormalizer.normalize(row.getString(2));
+            if (normalized == null) {
+                invalid[0]++;
+            } else {
+                userIds.add(row.getLong(1));
+                phoneNumbers.add(normalized);
+            }
+        });
+        if (invalid[0] > 0) {
+            log.warn("Kept the phone numbers of {} users as they are, they are not valid", invalid[0]);
+        }
+    }
+
+    private static void setIdsAndPhoneNumbers(PreparedStatement preparedStatement,
+                                              List<Long> userIds,
+                                              List<String> phoneNumbers) throws SQLException {
+        Connection connection = preparedStatement.getConnection();
+        preparedStatement.setArray(1, connection.createArrayOf("bigint", userIds.toArray()));
+        preparedStatement.setArray(2, connection.createArrayOf("varchar", phoneNumbers.toArray()));
+    }
+
+    private void createUniqueIndex(String name, String column) {
+        jdbcTemplate.execute(String.format(CREATE_UNIQUE_INDEX, name, column));
+    }
+
+    private void clear(String sql, List<Long> userIds) {
+        if (!userIds.isEmpty()) {
+            jdbcTemplate.update(sql, preparedStatement -> preparedStatement.setArray(1,
+                    preparedStatement.getConnection().createArrayOf("bigint", userIds.toArray())));
+        }
+    }
+
+    private static String listed(List<Long> userIds) {
+        return userIds.size() <= LISTED_IDS
+                ? userIds.toString()
+                : userIds.subList(0, LISTED_IDS) + " and more";
+    }
+}
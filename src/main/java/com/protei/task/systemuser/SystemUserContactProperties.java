@@ -0,0 +1,14 @@
+package com.protei.task.systemuser;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "systemuser.contacts")
+public class SystemUserContactProperties {
+    private boolean clearDuplicates = false;
+}
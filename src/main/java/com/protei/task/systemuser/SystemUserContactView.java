@@ -0,0 +1,7 @@
+package com.protei.task.systemuser;
+
+public interface SystemUserContactView {
+    String getEmail();
+
+    String getPhoneNumber();
+}
@@ -1,33 +1,132 @@
 package com.protei.task.systemuser;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping(path = "api/user")
 public class SystemUserController {
+    private static final String TEXT_CSV = "text/csv";
+
     private final SystemUserService systemUserService;
+    private final SystemUserImportService systemUserImportService;
+    private final PresenceStream presenceStream;
+    private final PresenceCounters presenceCounters;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter exportWriter;
 
     @Autowired
-    public SystemUserController(SystemUserService systemUserService) {
+    public SystemUserController(SystemUserService systemUserService,
+                                SystemUserImportService systemUserImportService,
+                                PresenceStream presenceStream,
+                                PresenceCounters presenceCounters,
+                                ObjectMapper objectMapper) {
         this.systemUserService = systemUserService;
+        this.systemUserImportService = systemUserImportService;
+        this.presenceStream = presenceStream;
+        this.presenceCounters = presenceCounters;
+        this.objectMapper = objectMapper;
+        this.exportWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
     }
 
     @GetMapping
-    public List<SystemUser> getSystemUsers() {
-        return systemUserService.getSystemUsers();
+    public List<SystemUserView> getSystemUsers(
+            @RequestParam(defaultValue = "0") long after,
+            @RequestParam(defaultValue = "100") int limit
+    ) {
+        return systemUserService.getSystemUsers(after, limit);
+    }
+
+    @GetMapping(path = "export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportSystemUsers() {
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.setRootValueSeparator(new SerializedString("\n"));
+                systemUserService.forEachSystemUser(user -> {
+                    try {
+                        exportWriter.writeValue(generator, user);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeRaw('\n');
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    @GetMapping(path = "presence/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamPresence(@RequestParam(required = false) List<Long> ids) {
+        return presenceStream.subscribe(ids);
+    }
+
+    @GetMapping(path = "presence/summary")
+    public Map<SystemUserStatus, Long> getPresenceSummary() {
+        return presenceCounters.getSummary();
+    }
+
+    @GetMapping(path = "{id}/presence/history")
+    public List<PresenceHistoryEntry> getPresenceHistory(
+            @PathVariable("id") long userId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to
+    ) {
+        return systemUserService.getPresenceHistory(userId, from, to);
+    }
+
+    @GetMapping(path = "{id}/presence/lifecycle")
+    public PresenceLifecycleTimeouts getPresenceLifecycle(@PathVariable("id") long userId) {
+        return systemUserService.getPresenceLifecycle(userId);
+    }
+
+    @PutMapping(path = "{id}/presence/lifecycle", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public PresenceLifecycleTimeouts setPresenceLifecycle(@PathVariable("id") long userId,
+                                                          @RequestBody PresenceLifecycleTimeouts timeouts) {
+        return systemUserService.setPresenceLifecycle(userId, timeouts);
+    }
+
+    @DeleteMapping(path = "{id}/presence/lifecycle")
+    public void deletePresenceLifecycle(@PathVariable("id") long userId) {
+        systemUserService.deletePresenceLifecycle(userId);
     }
 
     @GetMapping(path = "{id}")
-    public SystemUser getSystemUserById(@PathVariable("id") long userId) {
-        return systemUserService.getSystemUserById(userId);
+    public SystemUserView getSystemUserById(@PathVariable("id") long userId) {
+        return SystemUserView.of(systemUserService.getSystemUserById(userId));
     }
 
     @PostMapping
-    public SystemUser registerNewSystemUser(@RequestBody SystemUser user) {
-        return systemUserService.addNewSystemUser(user);
+    public SystemUserView registerNewSystemUser(@RequestBody SystemUser user) {
+        return SystemUserView.of(systemUserService.addNewSystemUser(user));
+    }
+
+    @PostMapping(path = "bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public List<SystemUserImportResult> importSystemUsers(InputStream body) {
+        return systemUserImportService.importJson(body);
+    }
+
+    @PostMapping(path = "bulk", consumes = TEXT_CSV)
+    public List<SystemUserImportResult> importSystemUsersFromCsv(InputStream body) {
+        return systemUserImportService.importCsv(body);
     }
 
     @DeleteMapping(path = "{id}")
@@ -45,8 +144,39 @@ public class SystemUserController {
         systemUserService.updateSystemUser(userId, name, email, phoneNumber);
     }
 
+    @GetMapping(path = "{id}/status")
+    public SystemUserPresence getSystemUserStatus(@PathVariable("id") long userId) {
+        return new SystemUserPresence(userId, systemUserService.getSystemUserStatus(userId));
+    }
+
+    @PatchMapping(path = "{id}", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public void patchSystemUser(@PathVariable("id") long userId, @RequestBody SystemUserPatch patch) {
+        systemUserService.patchSystemUser(userId, patch);
+    }
+
+    @PutMapping(path = "status/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public List<SystemUserStatusUpdateResult> updateSystemUserStatuses(@RequestBody List<SystemUserStatusUpdate> updates) {
+        return systemUserService.updateSystemUserStatuses(updates);
+    }
+
     @PutMapping(path = "{id}/status")
-    public SystemUser updateSystemUserStatus(@PathVariable("id") long userId, @RequestParam() String userStatus) {
-        return systemUserService.updateSystemUserStatus(userId, userStatus);
+    public SystemUserStatusChange updateSystemUserStatus(
+            @PathVariable("id") long userId,
+            @RequestParam() String userStatus,
+            @RequestParam(required = false) List<String> expectedStatus
+    ) {
+        return systemUserService.updateSystemUserStatus(userId, userStatus, expectedStatus);
+    }
+
+    @PostMapping(path = "{id}/heartbeat")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void heartbeat(@PathVariable("id") long userId) {
+        systemUserService.heartbeat(userId);
+    }
+
+    @PostMapping(path = "heartbeat")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void heartbeat(@RequestBody long[] userIds) {
+        systemUserService.heartbeat(userIds);
     }
 }
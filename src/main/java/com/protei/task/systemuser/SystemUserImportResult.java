@@ -0,0 +1,16 @@
+package com.protei.task.systemuser;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.protei.task.systemuser.enumeration.SystemUserImportStatus;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SystemUserImportResult {
+    private final int row;
+    private final Long id;
+    private final SystemUserImportStatus status;
+    private final String message;
+}
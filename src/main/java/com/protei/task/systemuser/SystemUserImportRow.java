@@ -0,0 +1,14 @@
+package com.protei.task.systemuser;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+public class SystemUserImportRow {
+    private String name;
+    private String email;
+    private String phoneNumber;
+}
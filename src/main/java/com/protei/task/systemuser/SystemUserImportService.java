@@ -0,0 +1,316 @@
+package com.protei.task.systemuser;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.protei.task.exception.UserValidationException;
+import com.protei.task.systemuser.enumeration.SystemUserImportStatus;
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+@Slf4j
+@Service
+public class SystemUserImportService {
+    private static final String RESERVE_IDS = "select nextval('user_sequence') from generate_series(1, ?)";
+    private static final String INSERT_SYSTEM_USER =
+            "insert into system_user (id, name, email, phone_number, user_status) values (?, ?, ?, ?, ?)";
+
+    private static final String IMPORT_IS_INVALID = "Import body is invalid: %s";
+    private static final String EMAIL_IS_DUPLICATED = "Email is duplicated in the import!";
+    private static final String PHONE_NUMBER_IS_DUPLICATED = "Phone number is duplicated in the import!";
+    private static final String USER_IS_TAKEN = "Email or phone number is taken!";
+
+    private final SystemUserRepository systemUserRepository;
+    private final SystemUserValidator validator;
+    private final PresenceStore presenceStore;
+    private final SystemUserCache systemUserCache;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectReader jsonReader;
+    private final ObjectReader csvReader;
+    private final ExecutorService validationExecutor;
+    private final int chunkSize;
+    private final int validationThreads;
+
+    @Autowired
+    public SystemUserImportService(SystemUserRepository systemUserRepository,
+                                   SystemUserValidator validator,
+                                   PresenceStore presenceStore,
+                                   SystemUserCache systemUserCache,
+                                   JdbcTemplate jdbcTemplate,
+                                   PlatformTransactionManager transactionManager,
+                                   ObjectMapper objectMapper,
+                                   SystemUserImportProperties properties) {
+        this.systemUserRepository = systemUserRepository;
+        this.validator = validator;
+        this.presenceStore = presenceStore;
+        this.systemUserCache = systemUserCache;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.jsonReader = objectMapper.readerFor(SystemUserImportRow.class);
+        this.csvReader = new CsvMapper().readerFor(SystemUserImportRow.class)
+                .with(CsvSchema.emptySchema().withHeader());
+        this.chunkSize = properties.getChunkSize();
+        this.validationThreads = properties.getValidationThreads();
+        this.validationExecutor = Executors.newFixedThreadPool(validationThreads, runnable -> {
+            Thread thread = new Thread(runnable, "user-import-validation");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public List<SystemUserImportResult> importJson(InputStream inputStream) {
+        return importRows(jsonReader, inputStream);
+    }
+
+    public List<SystemUserImportResult> importCsv(InputStream inputStream) {
+        return importRows(csvReader, inputStream);
+    }
+
+    @PreDestroy
+    public void preDestroy() {
+        validationExecutor.shutdownNow();
+    }
+
+    /**
+     * Imports rows chunk by chunk, each chunk committed on its own. A body that can't be parsed
+     * from its first row is rejected as a whole; one that breaks off later still gets the report
+     * of the rows before, which are imported, followed by an INVALID entry for the row that failed.
+     */
+    private List<SystemUserImportResult> importRows(ObjectReader reader, InputStream inputStream) {
+        List<SystemUserImportResult> results = new ArrayList<>();
+        Set<String> emails = new HashSet<>();
+        Set<String> phoneNumbers = new HashSet<>();
+        List<SystemUserImportRow> chunk = new ArrayList<>(chunkSize);
+        SystemUserImportResult parseFailure = null;
+        long start = System.nanoTime();
+        try (MappingIterator<SystemUserImportRow> rows = reader.readValues(inputStream)) {
+            while (rows.hasNextValue()) {
+                chunk.add(rows.nextValue());
+                if (chunk.size() == chunkSize) {
+                    importChunk(chunk, emails, phoneNumbers, results);
+                    chunk.clear();
+                }
+            }
+        } catch (IOException e) {
+            if (results.isEmpty() && chunk.isEmpty()) {
+                throw new UserValidationException(String.format(IMPORT_IS_INVALID, e.getMessage()));
+            }
+            parseFailure = rejected(results.size() + chunk.size() + 1, SystemUserImportStatus.INVALID,
+                    String.format(IMPORT_IS_INVALID, e.getMessage()));
+        }
+        if (!chunk.isEmpty()) {
+            importChunk(chunk, emails, phoneNumbers, results);
+        }
+        if (parseFailure != null) {
+            results.add(parseFailure);
+        }
+        log.info("Imported {} rows in {} ms", results.size(), (System.nanoTime() - start) / 1_000_000);
+        return results;
+    }
+
+    /**
+     * emails and phoneNumbers hold the values of rows created so far; a row repeating one is a
+     * DUPLICATE. A row repeating a value of an earlier row of the chunk waits for that row's
+     * outcome, so it is only a DUPLICATE if that row was created and is checked on its own if not.
+     * A waiting row still claims its values, so rows are always settled in import order.
+     */
+    private void importChunk(List<SystemUserImportRow> chunk,
+                             Set<String> emails,
+                             Set<String> phoneNumbers,
+                             List<SystemUserImportResult> results) {
+        int firstRow = results.size() + 1;
+        SystemUserImportResult[] chunkResults = validate(chunk, firstRow);
+        Set<String> takenEmails = new HashSet<>();
+        Set<String> takenPhoneNumbers = new HashSet<>();
+        List<Integer> candidates = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            if (chunkResults[i] == null) {
+                candidates.add(i);
+            }
+        }
+        while (!candidates.isEmpty()) {
+            List<Integer> pending = new ArrayList<>(candidates.size());
+            List<Integer> deferred = new ArrayList<>();
+            Set<String> pendingEmails = new HashSet<>();
+            Set<String> pendingPhoneNumbers = new HashSet<>();
+            for (int i : candidates) {
+                SystemUserImportRow row = chunk.get(i);
+                if (emails.contains(row.getEmail())) {
+                    chunkResults[i] = rejected(firstRow + i, SystemUserImportStatus.DUPLICATE, EMAIL_IS_DUPLICATED);
+                } else if (phoneNumbers.contains(row.getPhoneNumber())) {
+                    chunkResults[i] = rejected(firstRow + i, SystemUserImportStatus.DUPLICATE,
+                            PHONE_NUMBER_IS_DUPLICATED);
+                } else {
+                    boolean emailIsFree = pendingEmails.add(row.getEmail());
+                    boolean phoneNumberIsFree = pendingPhoneNumbers.add(row.getPhoneNumber());
+                    if (emailIsFree && phoneNumberIsFree) {
+                        pending.add(i);
+                    } else {
+                        deferred.add(i);
+                    }
+                }
+            }
+            pending = rejectTaken(chunk, pending, chunkResults, firstRow, takenEmails, takenPhoneNumbers);
+            if (!pending.isEmpty()) {
+                insert(chunk, pending, chunkResults, firstRow);
+            }
+            for (int i : pending) {
+                if (chunkResults[i].getStatus() == SystemUserImportStatus.CREATED) {
+                    emails.add(chunk.get(i).getEmail());
+                    phoneNumbers.add(chunk.get(i).getPhoneNumber());
+                }
+            }
+            candidates = deferred;
+        }
+        results.addAll(Arrays.asList(chunkResults));
+    }
+
+    private SystemUserImportResult[] validate(List<SystemUserImportRow> chunk, int firstRow) {
+        SystemUserImportResult[] chunkResults = new SystemUserImportResult[chunk.size()];
+        int sliceSize = (chunk.size() + validationThreads - 1) / validationThreads;
+        List<Callable<Void>> tasks = new ArrayList<>(validationThreads);
+        for (int from = 0; from < chunk.size(); from += sliceSize) {
+            int sliceStart = from;
+            int sliceEnd = Math.min(from + sliceSize, chunk.size());
+            tasks.add(() -> {
+                for (int i = sliceStart; i < sliceEnd; i++) {
+                    chunkResults[i] = validateRow(chunk.get(i), firstRow + i);
+                }
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> future : validationExecutor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        return chunkResults;
+    }
+
+    private SystemUserImportResult validateRow(SystemUserImportRow row, int rowNumber) {
+        try {
+            validator.validateName(row.getName());
+            row.setEmail(validator.normalizeEmail(row.getEmail()));
+            validator.validateEmail(row.getEmail());
+            row.setPhoneNumber(validator.normalizePhoneNumber(row.getPhoneNumber()));
+            return null;
+        } catch (UserValidationException e) {
+            return rejected(rowNumber, SystemUserImportStatus.INVALID, e.getMessage());
+        }
+    }
+
+    /**
+     * Rejects rows whose email or phone number is taken, adding those found in the database to
+     * takenEmails and takenPhoneNumbers so rows of later rounds of the chunk aren't looked up again.
+     */
+    private List<Integer> rejectTaken(List<SystemUserImportRow> chunk,
+                                      List<Integer> pending,
+                                      SystemUserImportResult[] chunkResults,
+                                      int firstRow,
+                                      Set<String> takenEmails,
+                                      Set<String> takenPhoneNumbers) {
+        List<String> emails = new ArrayList<>(pending.size());
+        List<String> phoneNumbers = new ArrayList<>(pending.size());
+        for (int i : pending) {
+            if (!takenEmails.contains(chunk.get(i).getEmail())
+                    && !takenPhoneNumbers.contains(chunk.get(i).getPhoneNumber())) {
+                emails.add(chunk.get(i).getEmail());
+                phoneNumbers.add(chunk.get(i).getPhoneNumber());
+            }
+        }
+        if (!emails.isEmpty()) {
+            for (SystemUserContactView contact
+                    : systemUserRepository.findContactsByEmailsOrPhoneNumbers(emails, phoneNumbers)) {
+                takenEmails.add(contact.getEmail());
+                takenPhoneNumbers.add(contact.getPhoneNumber());
+            }
+        }
+        if (takenEmails.isEmpty() && takenPhoneNumbers.isEmpty()) {
+            return pending;
+        }
+        List<Integer> free = new ArrayList<>(pending.size());
+        for (int i : pending) {
+            SystemUserImportRow row = chunk.get(i);
+            if (takenEmails.contains(row.getEmail())) {
+                chunkResults[i] = rejected(firstRow + i, SystemUserImportStatus.TAKEN, SystemUserValidator.EMAIL_IS_TAKEN);
+            } else if (takenPhoneNumbers.contains(row.getPhoneNumber())) {
+                chunkResults[i] = rejected(firstRow + i, SystemUserImportStatus.TAKEN,
+                        SystemUserValidator.PHONE_NUMBER_IS_TAKEN);
+            } else {
+                free.add(i);
+            }
+        }
+        return free;
+    }
+
+    private void insert(List<SystemUserImportRow> chunk,
+                        List<Integer> pending,
+                        SystemUserImportResult[] chunkResults,
+                        int firstRow) {
+        List<Long> ids = jdbcTemplate.queryForList(RESERVE_IDS, Long.class, pending.size());
+        List<Object[]> batch = new ArrayList<>(pending.size());
+        for (int i = 0; i < pending.size(); i++) {
+            batch.add(toInsertParameters(ids.get(i), chunk.get(pending.get(i))));
+        }
+        try {
+            transactionTemplate.executeWithoutResult(
+                    transactionStatus -> jdbcTemplate.batchUpdate(INSERT_SYSTEM_USER, batch));
+            for (int i = 0; i < pending.size(); i++) {
+                created(pending.get(i), ids.get(i), chunkResults, firstRow);
+            }
+        } catch (DataIntegrityViolationException e) {
+            log.warn("Batch insert of {} users failed, inserting one by one: {}", batch.size(), e.getMessage());
+            for (int i = 0; i < pending.size(); i++) {
+                try {
+                    jdbcTemplate.update(INSERT_SYSTEM_USER, batch.get(i));
+                    created(pending.get(i), ids.get(i), chunkResults, firstRow);
+                } catch (DataIntegrityViolationException rowException) {
+                    chunkResults[pending.get(i)] = rejected(firstRow + pending.get(i),
+                            SystemUserImportStatus.TAKEN, USER_IS_TAKEN);
+                }
+            }
+        }
+    }
+
+    private void created(int index, long id, SystemUserImportResult[] chunkResults, int firstRow) {
+        systemUserCache.invalidate(id);
+        presenceStore.load(id, SystemUserStatus.OFFLINE);
+        chunkResults[index] = new SystemUserImportResult(firstRow + index, id, SystemUserImportStatus.CREATED, null);
+    }
+
+    private static Object[] toInsertParameters(long id, SystemUserImportRow row) {
+        return new Object[]{id, row.getName(), row.getEmail(), row.getPhoneNumber(), SystemUserStatus.OFFLINE.name()};
+    }
+
+    private static SystemUserImportResult rejected(int row, SystemUserImportStatus status, String message) {
+        return new SystemUserImportResult(row, null, status, message);
+    }
+}
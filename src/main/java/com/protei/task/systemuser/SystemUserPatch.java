@@ -0,0 +1,19 @@
+package com.protei.task.systemuser;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+public class SystemUserPatch {
+    private String name;
+    private String email;
+    private String phoneNumber;
+    private Long version;
+
+    public boolean isEmpty() {
+        return name == null && email == null && phoneNumber == null;
+    }
+}
@@ -0,0 +1,12 @@
+package com.protei.task.systemuser;
+
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class SystemUserPresence {
+    private final long id;
+    private final SystemUserStatus userStatus;
+}
@@ -1,15 +1,70 @@
 package com.protei.task.systemuser;
 
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
-public interface SystemUserRepository extends JpaRepository<SystemUser, Long> {
+public interface SystemUserRepository extends JpaRepository<SystemUser, Long>, SystemUserRepositoryCustom {
     Optional<SystemUser> findSystemUserById(Long id);
 
-    Optional<SystemUser> findSystemUserByEmail(String email);
+    @Query("select u.email as email, u.phoneNumber as phoneNumber from SystemUser u " +
+            "where u.id <> :id and (u.email = :email or u.phoneNumber = :phoneNumber)")
+    List<SystemUserContactView> findContactsOfOtherUsers(@Param("id") long id,
+                                                         @Param("email") String email,
+                                                         @Param("phoneNumber") String phoneNumber);
 
-    Optional<SystemUser> findSystemUserByPhoneNumber(String phoneNumber);
+    @Query("select u.email as email, u.phoneNumber as phoneNumber from SystemUser u " +
+            "where u.email in :emails or u.phoneNumber in :phoneNumbers")
+    List<SystemUserContactView> findContactsByEmailsOrPhoneNumbers(@Param("emails") Collection<String> emails,
+                                                                   @Param("phoneNumbers") Collection<String> phoneNumbers);
+
+    @Query("select new com.protei.task.systemuser.SystemUserView(" +
+            "u.id, u.name, u.email, u.phoneNumber, u.userStatus, u.version) " +
+            "from SystemUser u where u.id > :id order by u.id")
+    List<SystemUserView> findSystemUserViewsAfter(@Param("id") long id, Pageable pageable);
+
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("select new com.protei.task.systemuser.SystemUserView(" +
+            "u.id, u.name, u.email, u.phoneNumber, u.userStatus, u.version) " +
+            "from SystemUser u order by u.id")
+    Stream<SystemUserView> streamSystemUserViews();
+
+    @Query("select u.id as id, u.userStatus as userStatus from SystemUser u where u.id in :ids")
+    List<SystemUserStatusView> findSystemUserStatusesByIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Locks the row of the user for the rest of the transaction and returns its status, OFFLINE if
+     * it has none, or nothing if the user doesn't exist.
+     */
+    @Query(value = "select coalesce(user_status, 'OFFLINE') from system_user where id = :id for update",
+            nativeQuery = true)
+    Optional<String> lockSystemUserStatus(@Param("id") long id);
+
+    @Query("select u.userStatus as userStatus, count(u) as userCount from SystemUser u group by u.userStatus")
+    List<SystemUserStatusCount> countSystemUsersByStatus();
+
+    /**
+     * Moves the users whose status is one of fromStatuses to newStatus; a user without a status
+     * counts as OFFLINE.
+     */
+    @Transactional
+    @Modifying
+    @Query("update SystemUser u set u.userStatus = :newStatus where u.id in :ids and " +
+            "coalesce(u.userStatus, 'OFFLINE') in :fromStatuses")
+    int transitionSystemUserStatuses(@Param("ids") Collection<Long> ids,
+                                     @Param("fromStatuses") Collection<SystemUserStatus> fromStatuses,
+                                     @Param("newStatus") SystemUserStatus newStatus);
 }
@@ -0,0 +1,5 @@
+package com.protei.task.systemuser;
+
+public interface SystemUserRepositoryCustom {
+    int patchSystemUser(long id, SystemUserPatch patch);
+}
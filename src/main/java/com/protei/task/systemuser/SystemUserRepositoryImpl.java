@@ -0,0 +1,45 @@
+package com.protei.task.systemuser;
+
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
+public class SystemUserRepositoryImpl implements SystemUserRepositoryCustom {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional
+    public int patchSystemUser(long id, SystemUserPatch patch) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<SystemUser> update = builder.createCriteriaUpdate(SystemUser.class);
+        Root<SystemUser> user = update.from(SystemUser.class);
+        if (patch.getName() != null) {
+            update.set(user.<String>get("name"), patch.getName());
+        }
+        if (patch.getEmail() != null) {
+            update.set(user.<String>get("email"), patch.getEmail());
+        }
+        if (patch.getPhoneNumber() != null) {
+            update.set(user.<String>get("phoneNumber"), patch.getPhoneNumber());
+        }
+        update.set(user.<Long>get("version"), builder.sum(user.<Long>get("version"), 1L));
+        Predicate condition = builder.equal(user.get("id"), builder.parameter(Long.class, "id"));
+        if (patch.getVersion() != null) {
+            condition = builder.and(condition,
+                    builder.equal(user.get("version"), builder.parameter(Long.class, "version")));
+        }
+        update.where(condition);
+        Query query = entityManager.createQuery(update).setParameter("id", id);
+        if (patch.getVersion() != null) {
+            query.setParameter("version", patch.getVersion());
+        }
+        return query.executeUpdate();
+    }
+}
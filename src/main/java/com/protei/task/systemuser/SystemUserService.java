@@ -1,175 +1,585 @@
 package com.protei.task.systemuser;
 
-import com.google.i18n.phonenumbers.NumberParseException;
-import com.google.i18n.phonenumbers.PhoneNumberUtil;
-import com.google.i18n.phonenumbers.Phonenumber.PhoneNumber;
+import com.protei.task.exception.PresenceHistoryDisabledException;
+import com.protei.task.exception.TooManyStatusUpdatesException;
 import com.protei.task.exception.UserNotFoundException;
+import com.protei.task.exception.UserStatusConflictException;
 import com.protei.task.exception.UserValidationException;
-import com.protei.task.scheduler.JobInfo;
+import com.protei.task.exception.UserVersionConflictException;
+import com.protei.task.execution.DatabasePermits;
 import com.protei.task.scheduler.SchedulerService;
-import com.protei.task.scheduler.SystemUserStatusUpdateJob;
 import com.protei.task.systemuser.enumeration.SystemUserStatus;
-import org.apache.commons.validator.routines.EmailValidator;
+import com.protei.task.systemuser.enumeration.SystemUserStatusUpdateOutcome;
+import com.protei.task.util.LongArrayList;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.transaction.Transactional;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 public class SystemUserService {
-    private static final String PHONE_NUMBER_REGION = "RU";
-
-    private static final String NAME_IS_INVALID = "User name is invalid!";
-    private static final String PHONE_NUMBER_IS_TAKEN = "Phone number is taken!";
-    private static final String EMAIL_IS_TAKEN = "Email is taken!";
-    private static final String EMAIL_IS_INVALID = "Email is invalid!";
-    private static final String PHONE_NUMBER_IS_INVALID = "Phone number is invalid!";
     private static final String NO_USER_WITH_ID = "No user with id: %s!";
     private static final String USER_STATUS_IS_INVALID = "User status is invalid!";
+    private static final String USER_VERSION_CONFLICT = "User with id %s was modified, version %s is outdated!";
+    private static final String USER_STATUS_CONFLICT = "Status of user with id %s is not one of %s!";
+    private static final String PAGE_LIMIT_IS_INVALID = "Page limit is invalid!";
+    private static final String BULK_SIZE_IS_INVALID = "Bulk size is invalid!";
+    private static final String USER_ID_IS_MISSING = "User id is missing!";
+    private static final String STATUS_UPDATE_IS_MISSING = "Status update is missing!";
+    private static final String USER_ID_IS_DUPLICATED = "User id is duplicated in the bulk!";
+    private static final String HISTORY_RANGE_IS_INVALID = "History range is invalid!";
+    private static final String HISTORY_IS_DISABLED = "Presence history is disabled!";
+    private static final String TOO_MANY_STATUS_UPDATES = "Too many status updates for user with id %s!";
+    private static final String LIFECYCLE_TIMEOUT_IS_INVALID = "Presence lifecycle timeout is invalid!";
 
-    //5 minutes
-    private static final long TIME_TO_SET_AWAY_STATUS = 300000L;
+    private static final int MAX_PAGE_LIMIT = 1000;
+    private static final int MAX_BULK_SIZE = 10000;
+    private static final int MAX_HISTORY_ENTRIES = 1000;
+    private static final Duration DEFAULT_HISTORY_RANGE = Duration.ofDays(1);
+    private static final long NEW_USER_ID = 0L;
 
     private final SystemUserRepository systemUserRepository;
     private final SchedulerService schedulerService;
+    private final PresenceStore presenceStore;
+    private final SystemUserValidator validator;
+    private final SystemUserCache systemUserCache;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectProvider<PresenceHistory> presenceHistoryProvider;
+    private final PresenceTimerCoalescer presenceTimerCoalescer;
+    private final StatusUpdateLimiter statusUpdateLimiter;
+    private final PresenceLifecycle presenceLifecycle;
+    private final ObjectProvider<DatabasePermits> databasePermitsProvider;
 
     @Autowired
-    public SystemUserService(SystemUserRepository systemUserRepository, SchedulerService schedulerService) {
+    public SystemUserService(SystemUserRepository systemUserRepository,
+                             SchedulerService schedulerService,
+                             PresenceStore presenceStore,
+                             SystemUserValidator validator,
+                             SystemUserCache systemUserCache,
+                             PlatformTransactionManager transactionManager,
+                             ObjectProvider<PresenceHistory> presenceHistoryProvider,
+                             PresenceTimerCoalescer presenceTimerCoalescer,
+                             StatusUpdateLimiter statusUpdateLimiter,
+                             PresenceLifecycle presenceLifecycle,
+                             ObjectProvider<DatabasePermits> databasePermitsProvider) {
         this.systemUserRepository = systemUserRepository;
         this.schedulerService = schedulerService;
+        this.presenceStore = presenceStore;
+        this.validator = validator;
+        this.systemUserCache = systemUserCache;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.presenceHistoryProvider = presenceHistoryProvider;
+        this.presenceTimerCoalescer = presenceTimerCoalescer;
+        this.statusUpdateLimiter = statusUpdateLimiter;
+        this.presenceLifecycle = presenceLifecycle;
+        this.databasePermitsProvider = databasePermitsProvider;
+    }
+
+    public List<SystemUserView> getSystemUsers(long afterId, int limit) {
+        if (limit <= 0) {
+            throw new UserValidationException(PAGE_LIMIT_IS_INVALID);
+        }
+        List<SystemUserView> users = systemUserRepository.findSystemUserViewsAfter(
+                afterId, PageRequest.of(0, Math.min(limit, MAX_PAGE_LIMIT)));
+        users.forEach(this::applyPresenceStatus);
+        return users;
     }
 
-    public List<SystemUser> getSystemUsers() {
-        return systemUserRepository.findAll();
+    /**
+     * Streams every user in one read-only transaction. It runs outside the request, e.g. in the
+     * body of the NDJSON export, so it holds a database permit of its own in the virtual execution
+     * mode.
+     */
+    public void forEachSystemUser(Consumer<SystemUserView> consumer) {
+        Runnable export = () -> transactionTemplate.executeWithoutResult(transactionStatus -> {
+            try (Stream<SystemUserView> users = systemUserRepository.streamSystemUserViews()) {
+                users.forEach(user -> consumer.accept(applyPresenceStatus(user)));
+            }
+        });
+        DatabasePermits databasePermits = databasePermitsProvider.getIfAvailable();
+        if (databasePermits == null) {
+            export.run();
+        } else {
+            databasePermits.run(export);
+        }
     }
 
     public SystemUser getSystemUserById(long userId) {
-        return findSystemUserById(userId);
+        return applyPresenceStatus(findCachedSystemUserById(userId));
+    }
+
+    public SystemUserStatus getSystemUserStatus(long userId) {
+        SystemUserStatus status = presenceStore.getStatus(userId);
+        if (status == null) {
+            status = presenceStore.load(userId, findCachedSystemUserById(userId).getUserStatus());
+        }
+        return status;
+    }
+
+    /**
+     * Transitions of the user between from (inclusive, a day before to by default) and to
+     * (exclusive, now by default), latest first and at most {@value #MAX_HISTORY_ENTRIES} of them;
+     * older ones are read by passing the oldest returned changedAt as to. Transitions reach the
+     * log up to presence.history.flush-interval-ms after they happen.
+     */
+    public List<PresenceHistoryEntry> getPresenceHistory(long userId, Instant from, Instant to) {
+        PresenceHistory presenceHistory = presenceHistoryProvider.getIfAvailable();
+        if (presenceHistory == null) {
+            throw new PresenceHistoryDisabledException(HISTORY_IS_DISABLED);
+        }
+        Instant end = to == null ? Instant.now() : to;
+        Instant start = from == null ? end.minus(DEFAULT_HISTORY_RANGE) : from;
+        if (!start.isBefore(end)) {
+            throw new UserValidationException(HISTORY_RANGE_IS_INVALID);
+        }
+        getSystemUserStatus(userId);
+        return presenceHistory.getHistory(userId, start, end, MAX_HISTORY_ENTRIES);
+    }
+
+    public PresenceLifecycleTimeouts getPresenceLifecycle(long userId) {
+        getSystemUserStatus(userId);
+        return presenceLifecycle.getTimeouts(userId);
+    }
+
+    /**
+     * Overrides the lifecycle timeouts of the user, a null timeout keeping the configured one. The
+     * timer already armed for the user keeps its deadline; the override applies from the next one.
+     */
+    public PresenceLifecycleTimeouts setPresenceLifecycle(long userId, PresenceLifecycleTimeouts timeouts) {
+        validateLifecycleTimeout(timeouts.getAwayAfterMs());
+        validateLifecycleTimeout(timeouts.getOfflineAfterMs());
+        getSystemUserStatus(userId);
+        presenceLifecycle.setOverride(userId, timeouts.getAwayAfterMs(), timeouts.getOfflineAfterMs());
+        return presenceLifecycle.getTimeouts(userId);
+    }
+
+    public void deletePresenceLifecycle(long userId) {
+        getSystemUserStatus(userId);
+        presenceLifecycle.removeOverride(userId);
     }
 
     public SystemUser addNewSystemUser(SystemUser user) {
-        validateName(user.getName());
-        validateEmail(user.getEmail());
-        validatePhoneNumber(user.getPhoneNumber());
+        validator.validateName(user.getName());
+        user.setEmail(validator.normalizeEmail(user.getEmail()));
+        validator.validateEmail(user.getEmail());
+        user.setPhoneNumber(validator.normalizePhoneNumber(user.getPhoneNumber()));
+        validateContactsNotTaken(NEW_USER_ID, user.getEmail(), user.getPhoneNumber());
         user.setUserStatus(SystemUserStatus.OFFLINE);
-        return systemUserRepository.save(user);
+        SystemUser savedUser = saveAndFlush(user);
+        systemUserCache.invalidate(savedUser.getId());
+        presenceStore.load(savedUser.getId(), savedUser.getUserStatus());
+        return savedUser;
     }
 
     public void deleteSystemUser(long userId) {
         SystemUser user = findSystemUserById(userId);
         systemUserRepository.delete(user);
+        systemUserCache.invalidate(userId);
+        presenceStore.remove(userId);
+        schedulerService.cancelPresenceTimer(userId);
+        presenceLifecycle.removeOverride(userId);
     }
 
     @Transactional
     public void updateSystemUser(long userId, String name, String email, String phoneNumber) {
         SystemUser user = findSystemUserById(userId);
+        String normalizedEmail = email == null ? null : validator.normalizeEmail(email);
+        String normalizedPhoneNumber = phoneNumber == null ? null : validator.normalizePhoneNumber(phoneNumber);
+        if (name != null) {
+            validator.validateName(name);
+        }
+        if (normalizedEmail != null) {
+            validator.validateEmail(normalizedEmail);
+        }
+        validateContactsNotTaken(userId, normalizedEmail, normalizedPhoneNumber);
         if (name != null) {
-            validateName(name);
             user.setName(name);
         }
-        if (email != null) {
-            validateEmail(email);
-            user.setEmail(email);
+        if (normalizedEmail != null) {
+            user.setEmail(normalizedEmail);
         }
-        if (phoneNumber != null) {
-            validatePhoneNumber(phoneNumber);
-            user.setPhoneNumber(phoneNumber);
+        if (normalizedPhoneNumber != null) {
+            user.setPhoneNumber(normalizedPhoneNumber);
         }
+        saveAndFlush(user);
+        systemUserCache.invalidateAfterCommit(userId);
     }
 
-    @Transactional
-    public SystemUser updateSystemUserStatus(long userId, String userStatus) {
-        SystemUser user = findSystemUserById(userId);
+    public void patchSystemUser(long userId, SystemUserPatch patch) {
+        if (patch.getName() != null) {
+            validator.validateName(patch.getName());
+        }
+        if (patch.getEmail() != null) {
+            patch.setEmail(validator.normalizeEmail(patch.getEmail()));
+            validator.validateEmail(patch.getEmail());
+        }
+        if (patch.getPhoneNumber() != null) {
+            patch.setPhoneNumber(validator.normalizePhoneNumber(patch.getPhoneNumber()));
+        }
+        if (patch.isEmpty()) {
+            findCachedSystemUserById(userId);
+            return;
+        }
+        validateContactsNotTaken(userId, patch.getEmail(), patch.getPhoneNumber());
+        int updated;
+        try {
+            updated = systemUserRepository.patchSystemUser(userId, patch);
+        } catch (DataIntegrityViolationException e) {
+            throw toUserValidationException(e);
+        }
+        systemUserCache.invalidate(userId);
+        if (updated == 0) {
+            if (!systemUserRepository.existsById(userId)) {
+                throw new UserNotFoundException(String.format(NO_USER_WITH_ID, userId));
+            }
+            throw new UserVersionConflictException(String.format(USER_VERSION_CONFLICT, userId, patch.getVersion()));
+        }
+    }
+
+    public SystemUserStatusChange updateSystemUserStatus(long userId, String userStatus, List<String> expectedStatuses) {
+        if (!statusUpdateLimiter.tryAcquire(userId)) {
+            throw new TooManyStatusUpdatesException(String.format(TOO_MANY_STATUS_UPDATES, userId));
+        }
         validateStatus(userStatus);
         SystemUserStatus status = SystemUserStatus.valueOf(userStatus);
-        user.setUserStatus(status);
-        handleUserStatusJob(userId, status);
-        return user;
+        if (expectedStatuses == null || expectedStatuses.isEmpty()) {
+            SystemUserStatus previousStatus = changePresenceStatus(userId, status);
+            handleUserStatusJob(userId, status, previousStatus);
+            return new SystemUserStatusChange(userId, status, previousStatus);
+        }
+        Set<SystemUserStatus> fromStatuses = EnumSet.noneOf(SystemUserStatus.class);
+        for (String expectedStatus : expectedStatuses) {
+            validateStatus(expectedStatus);
+            fromStatuses.add(SystemUserStatus.valueOf(expectedStatus));
+        }
+        SystemUserStatus previousStatus = transitionSystemUserStatus(userId, fromStatuses, status);
+        if (previousStatus == null) {
+            throw new UserStatusConflictException(String.format(USER_STATUS_CONFLICT, userId, fromStatuses));
+        }
+        return new SystemUserStatusChange(userId, status, previousStatus);
     }
 
-    private SystemUser findSystemUserById(long userId) {
-        return systemUserRepository.findSystemUserById(userId)
-                .orElseThrow(() -> new UserNotFoundException(String.format(NO_USER_WITH_ID, userId)));
+    /**
+     * Applies the updates grouped by target status and hands the timers of each group to the
+     * {@link PresenceTimerCoalescer} in one call. Statuses
+     * reach system_user through the {@link PresenceStore} flush, one conditional UPDATE per status
+     * transition, or one by one in the database expiry mode, where the store writes them through.
+     * Invalid, duplicated, rate limited and unknown ids are reported in their own results.
+     */
+    public List<SystemUserStatusUpdateResult> updateSystemUserStatuses(List<SystemUserStatusUpdate> updates) {
+        if (updates.size() > MAX_BULK_SIZE) {
+            throw new UserValidationException(BULK_SIZE_IS_INVALID);
+        }
+        SystemUserStatusUpdateResult[] results = new SystemUserStatusUpdateResult[updates.size()];
+        Map<SystemUserStatus, List<Integer>> groups = new EnumMap<>(SystemUserStatus.class);
+        Set<Long> userIds = new HashSet<>();
+        List<Long> unknownIds = new ArrayList<>();
+        for (int i = 0; i < updates.size(); i++) {
+            SystemUserStatusUpdate update = updates.get(i);
+            if (update == null) {
+                results[i] = rejected(null, SystemUserStatusUpdateOutcome.INVALID, STATUS_UPDATE_IS_MISSING);
+                continue;
+            }
+            Long userId = update.getId();
+            if (userId == null) {
+                results[i] = rejected(null, SystemUserStatusUpdateOutcome.INVALID, USER_ID_IS_MISSING);
+            } else if (!isStatusValid(update.getStatus())) {
+                results[i] = rejected(userId, SystemUserStatusUpdateOutcome.INVALID, USER_STATUS_IS_INVALID);
+            } else if (!userIds.add(userId)) {
+                results[i] = rejected(userId, SystemUserStatusUpdateOutcome.DUPLICATE, USER_ID_IS_DUPLICATED);
+            } else if (!statusUpdateLimiter.tryAcquire(userId)) {
+                results[i] = rejected(userId, SystemUserStatusUpdateOutcome.RATE_LIMITED,
+                        String.format(TOO_MANY_STATUS_UPDATES, userId));
+            } else {
+                groups.computeIfAbsent(SystemUserStatus.valueOf(update.getStatus()), status -> new ArrayList<>()).add(i);
+                if (presenceStore.getStatus(userId) == null) {
+                    unknownIds.add(userId);
+                }
+            }
+        }
+        if (!unknownIds.isEmpty()) {
+            for (SystemUserStatusView view : systemUserRepository.findSystemUserStatusesByIds(unknownIds)) {
+                presenceStore.load(view.getId(), view.getUserStatus());
+            }
+        }
+        for (Map.Entry<SystemUserStatus, List<Integer>> group : groups.entrySet()) {
+            SystemUserStatus status = group.getKey();
+            LongArrayList updatedIds = new LongArrayList(group.getValue().size());
+            LongArrayList keptIds = new LongArrayList();
+            for (int i : group.getValue()) {
+                long userId = updates.get(i).getId();
+                SystemUserStatus previousStatus = presenceStore.setStatus(userId, status);
+                if (previousStatus == null) {
+                    results[i] = rejected(userId, SystemUserStatusUpdateOutcome.NOT_FOUND,
+                            String.format(NO_USER_WITH_ID, userId));
+                    continue;
+                }
+                if (previousStatus != status) {
+                    systemUserCache.invalidate(userId);
+                }
+                results[i] = new SystemUserStatusUpdateResult(userId, SystemUserStatusUpdateOutcome.UPDATED,
+                        status, previousStatus, null);
+                if (previousStatus == status) {
+                    keptIds.add(userId);
+                } else {
+                    updatedIds.add(userId);
+                }
+            }
+            presenceTimerCoalescer.applyAllNow(keptIds, status);
+            presenceTimerCoalescer.submitAll(updatedIds, status);
+        }
+        return Arrays.asList(results);
     }
 
-    private void validateName(String name) {
-        if (name.length() == 0 || name.length() > 20) {
-            throw new UserValidationException(NAME_IS_INVALID);
+    public SystemUserStatus transitionSystemUserStatus(long userId,
+                                                       Collection<SystemUserStatus> fromStatuses,
+                                                       SystemUserStatus toStatus) {
+        loadPresenceStatus(userId);
+        SystemUserStatus previousStatus = presenceStore.compareAndSet(userId, fromStatuses, toStatus);
+        if (previousStatus != null) {
+            if (previousStatus != toStatus) {
+                systemUserCache.invalidate(userId);
+            }
+            handleUserStatusJob(userId, toStatus, previousStatus);
         }
+        return previousStatus;
     }
 
-    private void validatePhoneNumber(String phoneNumber) {
-        if (isPhoneNumberInvalid(phoneNumber)) {
-            throw new UserValidationException(PHONE_NUMBER_IS_INVALID);
+    public void heartbeat(long userId) {
+        if (rearmAwayTimer(userId)) {
+            return;
         }
-        if (isPhoneNumberTaken(phoneNumber)) {
-            throw new UserValidationException(PHONE_NUMBER_IS_TAKEN);
+        changePresenceStatus(userId, SystemUserStatus.ONLINE);
+        presenceTimerCoalescer.applyNow(userId, SystemUserStatus.ONLINE);
+    }
+
+    public void heartbeat(long[] userIds) {
+        List<Long> unknownIds = new ArrayList<>();
+        for (long userId : userIds) {
+            if (rearmAwayTimer(userId)) {
+                continue;
+            }
+            if (presenceStore.setStatus(userId, SystemUserStatus.ONLINE) == null) {
+                unknownIds.add(userId);
+            } else {
+                presenceTimerCoalescer.applyNow(userId, SystemUserStatus.ONLINE);
+            }
+        }
+        if (unknownIds.isEmpty()) {
+            return;
+        }
+        for (SystemUserStatusView view : systemUserRepository.findSystemUserStatusesByIds(unknownIds)) {
+            presenceStore.load(view.getId(), view.getUserStatus());
+            presenceStore.setStatus(view.getId(), SystemUserStatus.ONLINE);
+            presenceTimerCoalescer.applyNow(view.getId(), SystemUserStatus.ONLINE);
         }
     }
 
-    private void validateEmail(String email) {
-        if (isEmailInvalid(email)) {
-            throw new UserValidationException(EMAIL_IS_INVALID);
+    /**
+     * Moves users whose timer of status expired to the next lifecycle status and arms the timer of
+     * that status. Users that left status meanwhile keep a timer armed for them by that change; if
+     * there is none, e.g. because the timer that fired was armed for a status the user had already
+     * left, one is armed for the status they are in, so no user is left without a deadline.
+     */
+    public int expirePresence(SystemUserStatus status, long[] userIds) {
+        SystemUserStatus nextStatus = PresenceLifecycle.nextStatus(status);
+        int updated = 0;
+        Map<SystemUserStatus, LongArrayList> armIds = new EnumMap<>(SystemUserStatus.class);
+        Map<SystemUserStatus, LongArrayList> delaysMs = new EnumMap<>(SystemUserStatus.class);
+        for (long userId : userIds) {
+            SystemUserStatus currentStatus;
+            if (nextStatus != null && presenceStore.compareAndSet(userId, status, nextStatus)) {
+                systemUserCache.invalidate(userId);
+                updated++;
+                currentStatus = nextStatus;
+            } else {
+                currentStatus = presenceStore.getStatus(userId);
+                if (currentStatus == null || currentStatus == status) {
+                    continue;
+                }
+            }
+            long timeoutMs = presenceLifecycle.getTimeoutMs(userId, currentStatus);
+            if (timeoutMs > 0) {
+                armIds.computeIfAbsent(currentStatus, key -> new LongArrayList()).add(userId);
+                delaysMs.computeIfAbsent(currentStatus, key -> new LongArrayList()).add(timeoutMs);
+            }
         }
-        if (isEmailTaken(email)) {
-            throw new UserValidationException(EMAIL_IS_TAKEN);
+        for (Map.Entry<SystemUserStatus, LongArrayList> group : armIds.entrySet()) {
+            schedulerService.armPresenceTimersIfAbsent(group.getValue().toArray(), group.getKey(),
+                    delaysMs.get(group.getKey()).toArray());
         }
+        return updated;
     }
 
-    private void validateStatus(String status) {
-        try {
-            SystemUserStatus.valueOf(status);
-        } catch (IllegalArgumentException e) {
-            throw new UserValidationException(USER_STATUS_IS_INVALID);
+    private SystemUserStatus changePresenceStatus(long userId, SystemUserStatus status) {
+        SystemUserStatus previousStatus = presenceStore.setStatus(userId, status);
+        if (previousStatus == null) {
+            loadPresenceStatus(userId);
+            previousStatus = presenceStore.setStatus(userId, status);
+        }
+        if (previousStatus != status) {
+            systemUserCache.invalidate(userId);
         }
+        return previousStatus;
     }
 
-    private boolean isPhoneNumberTaken(String phoneNumber) {
-        return systemUserRepository.findSystemUserByPhoneNumber(phoneNumber).isPresent();
+    private void loadPresenceStatus(long userId) {
+        if (presenceStore.getStatus(userId) == null) {
+            presenceStore.load(userId, findCachedSystemUserById(userId).getUserStatus());
+        }
     }
 
-    private boolean isPhoneNumberInvalid(String phoneNumber) {
-        PhoneNumberUtil phoneUtil = PhoneNumberUtil.getInstance();
-        PhoneNumber phoneNumberProto;
+    private SystemUser applyPresenceStatus(SystemUser user) {
+        SystemUserStatus status = presenceStore.getStatus(user.getId());
+        if (status != null) {
+            user.setUserStatus(status);
+        }
+        return user;
+    }
+
+    private SystemUserView applyPresenceStatus(SystemUserView user) {
+        SystemUserStatus status = presenceStore.getStatus(user.getId());
+        if (status != null) {
+            user.setUserStatus(status);
+        }
+        return user;
+    }
+
+    private SystemUser findCachedSystemUserById(long userId) {
+        SystemUser user = systemUserCache.get(userId, systemUserRepository::findSystemUserById);
+        if (user == null) {
+            throw new UserNotFoundException(String.format(NO_USER_WITH_ID, userId));
+        }
+        return user;
+    }
+
+    private SystemUser findSystemUserById(long userId) {
+        return systemUserRepository.findSystemUserById(userId)
+                .orElseThrow(() -> new UserNotFoundException(String.format(NO_USER_WITH_ID, userId)));
+    }
+
+    private void validateContactsNotTaken(long userId, String email, String phoneNumber) {
+        if (email == null && phoneNumber == null) {
+            return;
+        }
+        for (SystemUserContactView contact : systemUserRepository.findContactsOfOtherUsers(userId, email, phoneNumber)) {
+            if (email != null && email.equals(contact.getEmail())) {
+                throw new UserValidationException(SystemUserValidator.EMAIL_IS_TAKEN);
+            }
+            if (phoneNumber != null && phoneNumber.equals(contact.getPhoneNumber())) {
+                throw new UserValidationException(SystemUserValidator.PHONE_NUMBER_IS_TAKEN);
+            }
+        }
+    }
+
+    private SystemUser saveAndFlush(SystemUser user) {
         try {
-            phoneNumberProto = phoneUtil.parse(phoneNumber, PHONE_NUMBER_REGION);
-        } catch (NumberParseException e) {
-            throw new UserValidationException(e.getMessage());
+            return systemUserRepository.saveAndFlush(user);
+        } catch (DataIntegrityViolationException e) {
+            throw toUserValidationException(e);
+        } catch (ObjectOptimisticLockingFailureException e) {
+            throw new UserVersionConflictException(String.format(USER_VERSION_CONFLICT, user.getId(), user.getVersion()));
+        }
+    }
+
+    private RuntimeException toUserValidationException(DataIntegrityViolationException e) {
+        Throwable cause = e.getCause();
+        while (cause != null && !(cause instanceof ConstraintViolationException)) {
+            cause = cause.getCause();
+        }
+        if (cause != null) {
+            String constraintName = ((ConstraintViolationException) cause).getConstraintName();
+            if (constraintName != null) {
+                constraintName = constraintName.toLowerCase(Locale.ROOT);
+                if (constraintName.contains(SystemUser.EMAIL_UNIQUE_INDEX)) {
+                    return new UserValidationException(SystemUserValidator.EMAIL_IS_TAKEN);
+                }
+                if (constraintName.contains(SystemUser.PHONE_NUMBER_UNIQUE_INDEX)) {
+                    return new UserValidationException(SystemUserValidator.PHONE_NUMBER_IS_TAKEN);
+                }
+            }
         }
-        return !phoneUtil.isValidNumber(phoneNumberProto);
+        return e;
     }
 
-    private boolean isEmailTaken(String email) {
-        return systemUserRepository.findSystemUserByEmail(email).isPresent();
+    private static void validateLifecycleTimeout(Long timeoutMs) {
+        if (timeoutMs != null && (timeoutMs < 0 || timeoutMs > PresenceLifecycle.MAX_TIMEOUT_MS)) {
+            throw new UserValidationException(LIFECYCLE_TIMEOUT_IS_INVALID);
+        }
     }
 
-    private boolean isEmailInvalid(String email) {
-        return !EmailValidator.getInstance().isValid(email);
+    private void validateStatus(String status) {
+        if (!isStatusValid(status)) {
+            throw new UserValidationException(USER_STATUS_IS_INVALID);
+        }
     }
 
-    private void handleUserStatusJob(long userId, SystemUserStatus status) {
-        String userIdString = String.valueOf(userId);
-        if (status == SystemUserStatus.ONLINE) {
-            runUpdateStatusJob(userIdString);
+    private static boolean isStatusValid(String status) {
+        if (status == null) {
+            return false;
         }
-        if (((status == SystemUserStatus.OFFLINE) || (status == SystemUserStatus.AWAY))
-                && (schedulerService.getRunningJob(userIdString) != null)) {
-            schedulerService.deleteJob(userIdString);
+        try {
+            SystemUserStatus.valueOf(status);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
         }
     }
 
-    private void runUpdateStatusJob(String userId) {
-        if (schedulerService.getRunningJob(userId) != null) {
-            schedulerService.deleteJob(userId);
+    private static SystemUserStatusUpdateResult rejected(Long userId,
+                                                         SystemUserStatusUpdateOutcome outcome,
+                                                         String message) {
+        return new SystemUserStatusUpdateResult(userId, outcome, null, null, message);
+    }
+
+    /**
+     * Only ONLINE users are re-armed in place, and only a timer armed for ONLINE: otherwise the
+     * timer may belong to a status that has since changed, with its replacement still waiting in
+     * the coalescer.
+     */
+    private boolean rearmAwayTimer(long userId) {
+        if (presenceStore.getStatus(userId) != SystemUserStatus.ONLINE) {
+            return false;
         }
-        scheduleTask(userId);
+        long timeoutMs = presenceLifecycle.getTimeoutMs(userId, SystemUserStatus.ONLINE);
+        if (timeoutMs == 0L || schedulerService.rearmPresenceTimer(userId, SystemUserStatus.ONLINE, timeoutMs)) {
+            presenceStore.touch(userId);
+            return true;
+        }
+        return false;
     }
 
-    private void scheduleTask(String userId) {
-        JobInfo info = new JobInfo();
-        info.setUserId(userId);
-        info.setInitialOffsetMs(TIME_TO_SET_AWAY_STATUS);
-        schedulerService.schedule(SystemUserStatusUpdateJob.class, info);
+    /**
+     * Changes of status are coalesced; an update keeping the status only moves the deadline, which
+     * is done at once like a heartbeat.
+     */
+    private void handleUserStatusJob(long userId, SystemUserStatus status, SystemUserStatus previousStatus) {
+        if (previousStatus == status) {
+            presenceTimerCoalescer.applyNow(userId, status);
+        } else {
+            presenceTimerCoalescer.submit(userId, status);
+        }
     }
 }
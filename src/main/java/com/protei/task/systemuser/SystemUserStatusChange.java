@@ -0,0 +1,13 @@
+package com.protei.task.systemuser;
+
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class SystemUserStatusChange {
+    private final long id;
+    private final SystemUserStatus userStatus;
+    private final SystemUserStatus previousStatus;
+}
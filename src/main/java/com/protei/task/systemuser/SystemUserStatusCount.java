@@ -0,0 +1,9 @@
+package com.protei.task.systemuser;
+
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
+
+public interface SystemUserStatusCount {
+    SystemUserStatus getUserStatus();
+
+    long getUserCount();
+}
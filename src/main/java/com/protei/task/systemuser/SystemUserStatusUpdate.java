@@ -0,0 +1,13 @@
+package com.protei.task.systemuser;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+public class SystemUserStatusUpdate {
+    private Long id;
+    private String status;
+}
@@ -0,0 +1,18 @@
+package com.protei.task.systemuser;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
+import com.protei.task.systemuser.enumeration.SystemUserStatusUpdateOutcome;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SystemUserStatusUpdateResult {
+    private final Long id;
+    private final SystemUserStatusUpdateOutcome outcome;
+    private final SystemUserStatus userStatus;
+    private final SystemUserStatus previousStatus;
+    private final String message;
+}
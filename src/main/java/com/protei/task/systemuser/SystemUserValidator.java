@@ -0,0 +1,83 @@
+package com.protei.task.systemuser;
+
+import com.protei.task.exception.UserValidationException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.commons.validator.routines.EmailValidator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+@Component
+public class SystemUserValidator {
+    public static final String PHONE_NUMBER_IS_TAKEN = "Phone number is taken!";
+    public static final String EMAIL_IS_TAKEN = "Email is taken!";
+
+    private static final String NAME_IS_INVALID = "User name is invalid!";
+    private static final String EMAIL_IS_INVALID = "Email is invalid!";
+    private static final String PHONE_NUMBER_IS_INVALID = "Phone number is invalid!";
+
+    private static final String VALIDATION_TIMER = "systemuser.validation";
+
+    private final PhoneNumberNormalizer phoneNumberNormalizer;
+    private final Timer nameTimer;
+    private final Timer emailTimer;
+    private final Timer phoneNumberTimer;
+
+    @Autowired
+    public SystemUserValidator(PhoneNumberNormalizer phoneNumberNormalizer, MeterRegistry meterRegistry) {
+        this.phoneNumberNormalizer = phoneNumberNormalizer;
+        this.nameTimer = meterRegistry.timer(VALIDATION_TIMER, "step", "name");
+        this.emailTimer = meterRegistry.timer(VALIDATION_TIMER, "step", "email");
+        this.phoneNumberTimer = meterRegistry.timer(VALIDATION_TIMER, "step", "phone_number");
+    }
+
+    public void validateName(String name) {
+        long start = System.nanoTime();
+        try {
+            if (name == null || name.length() == 0 || name.length() > 20) {
+                throw new UserValidationException(NAME_IS_INVALID);
+            }
+        } finally {
+            nameTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public String normalizePhoneNumber(String phoneNumber) {
+        long start = System.nanoTime();
+        try {
+            String normalized = phoneNumberNormalizer.normalize(phoneNumber);
+            if (normalized == null) {
+                throw new UserValidationException(PHONE_NUMBER_IS_INVALID);
+            }
+            return normalized;
+        } finally {
+            phoneNumberTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public void validateEmail(String email) {
+        long start = System.nanoTime();
+        try {
+            if (isEmailInvalid(email)) {
+                throw new UserValidationException(EMAIL_IS_INVALID);
+            }
+        } finally {
+            emailTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public String normalizeEmail(String email) {
+        return email == null ? null : email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    public boolean isPhoneNumberInvalid(String phoneNumber) {
+        return phoneNumberNormalizer.normalize(phoneNumber) == null;
+    }
+
+    public boolean isEmailInvalid(String email) {
+        return !EmailValidator.getInstance().isValid(email);
+    }
+}
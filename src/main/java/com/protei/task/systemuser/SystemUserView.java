@@ -0,0 +1,27 @@
+package com.protei.task.systemuser;
+
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Response representation of a {@link SystemUser}. Pages and exports are selected straight into
+ * it, so they skip entity hydration and persistence context bookkeeping.
+ */
+@Getter
+@AllArgsConstructor
+public class SystemUserView {
+    private final long id;
+    private final String name;
+    private final String email;
+    private final String phoneNumber;
+    @Setter
+    private SystemUserStatus userStatus;
+    private final long version;
+
+    public static SystemUserView of(SystemUser user) {
+        return new SystemUserView(user.getId(), user.getName(), user.getEmail(), user.getPhoneNumber(),
+                user.getUserStatus(), user.getVersion());
+    }
+}
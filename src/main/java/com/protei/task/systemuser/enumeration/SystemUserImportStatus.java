@@ -0,0 +1,8 @@
+package com.protei.task.systemuser.enumeration;
+
+public enum SystemUserImportStatus {
+    CREATED,
+    INVALID,
+    DUPLICATE,
+    TAKEN
+}
@@ -0,0 +1,9 @@
+package com.protei.task.systemuser.enumeration;
+
+public enum SystemUserStatusUpdateOutcome {
+    UPDATED,
+    INVALID,
+    DUPLICATE,
+    RATE_LIMITED,
+    NOT_FOUND
+}
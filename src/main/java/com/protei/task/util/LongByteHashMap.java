@@ -0,0 +1,156 @@
+package com.protei.task.util;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing long to byte map without boxing. A slot is empty when its value equals
+ * {@code missingValue}, so that value can't be stored.
+ */
+public class LongByteHashMap {
+    private static final int MIN_CAPACITY = 16;
+
+    private final byte missingValue;
+    private long[] keys;
+    private byte[] values;
+    private int mask;
+    private int size;
+
+    public LongByteHashMap(int expectedSize, byte missingValue) {
+        this.missingValue = missingValue;
+        allocate(capacityFor(expectedSize));
+    }
+
+    public byte get(long key) {
+        int slot = index(key);
+        while (values[slot] != missingValue) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return missingValue;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != missingValue;
+    }
+
+    public byte put(long key, byte value) {
+        if (value == missingValue) {
+            throw new IllegalArgumentException("Value can't be equal to missing value");
+        }
+        int slot = index(key);
+        while (values[slot] != missingValue) {
+            if (keys[slot] == key) {
+                byte previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > (mask + 1) >> 1) {
+            rehash((mask + 1) << 1);
+        }
+        return missingValue;
+    }
+
+    public byte remove(long key) {
+        int slot = index(key);
+        while (values[slot] != missingValue) {
+            if (keys[slot] == key) {
+                byte previous = values[slot];
+                removeAt(slot);
+                size--;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return missingValue;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(values, missingValue);
+        size = 0;
+    }
+
+    public byte getMissingValue() {
+        return missingValue;
+    }
+
+    public void forEach(EntryConsumer consumer) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != missingValue) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    private void removeAt(int slot) {
+        int gap = slot;
+        int i = slot;
+        while (true) {
+            i = (i + 1) & mask;
+            if (values[i] == missingValue) {
+                break;
+            }
+            int home = index(keys[i]);
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+        values[gap] = missingValue;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        byte[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != missingValue) {
+                int slot = index(oldKeys[i]);
+                while (values[slot] != missingValue) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new byte[capacity];
+        Arrays.fill(values, missingValue);
+        mask = capacity - 1;
+    }
+
+    private int index(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, byte value);
+    }
+}
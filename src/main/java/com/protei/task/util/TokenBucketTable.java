@@ -0,0 +1,79 @@
+package com.protei.task.util;
+
+/**
+ * Token buckets keyed by long in a fixed-size, 4-way set-associative table, 16 bytes per entry.
+ * Each bucket is a single theoretical arrival time (the GCRA form of a token bucket): a take
+ * advances it by one token's refill interval and is refused if that would put it more than
+ * {@code capacity} tokens ahead of now. A bucket whose arrival time has passed is full again and
+ * indistinguishable from a new one, so its slot is free for reuse; when a set has no such slot,
+ * the bucket closest to full is evicted. Memory use is fixed regardless of how many keys are seen.
+ */
+public class TokenBucketTable {
+    private static final int WAYS = 4;
+    private static final int LOCKS = 64;
+
+    private final long[] keys;
+    private final long[] arrivalNanos;
+    private final Object[] locks = new Object[LOCKS];
+    private final int setMask;
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final long originNanos = System.nanoTime();
+
+    public TokenBucketTable(int expectedKeys, double tokensPerSecond, int capacity) {
+        if (tokensPerSecond <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Token rate and capacity must be positive");
+        }
+        int sets = 1;
+        while (sets * WAYS < expectedKeys) {
+            sets <<= 1;
+        }
+        this.keys = new long[sets * WAYS];
+        this.arrivalNanos = new long[sets * WAYS];
+        this.setMask = sets - 1;
+        this.intervalNanos = (long) (1_000_000_000L / tokensPerSecond);
+        this.toleranceNanos = intervalNanos * capacity;
+        for (int i = 0; i < LOCKS; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    public boolean tryTake(long key) {
+        long now = System.nanoTime() - originNanos;
+        int set = index(key);
+        int first = set * WAYS;
+        synchronized (locks[set & (LOCKS - 1)]) {
+            int slot = -1;
+            int victim = first;
+            for (int i = first; i < first + WAYS; i++) {
+                if (keys[i] == key && arrivalNanos[i] > now) {
+                    slot = i;
+                    break;
+                }
+                if (arrivalNanos[i] < arrivalNanos[victim]) {
+                    victim = i;
+                }
+            }
+            long arrival = slot < 0 ? now : arrivalNanos[slot];
+            long next = arrival + intervalNanos;
+            if (next - now > toleranceNanos) {
+                return false;
+            }
+            if (slot < 0) {
+                slot = victim;
+                keys[slot] = key;
+            }
+            arrivalNanos[slot] = next;
+            return true;
+        }
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    private int index(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & setMask;
+    }
+}
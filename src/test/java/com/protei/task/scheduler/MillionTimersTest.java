@@ -0,0 +1,140 @@
+package com.protei.task.scheduler;
+
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
+import com.protei.task.util.LongArrayList;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A million concurrent timers: every one must fire exactly once, with the tag and deadline of
+ * the last arm that applied to it, and never after being cancelled.
+ */
+class MillionTimersTest {
+    private static final int USERS = 1_000_000;
+    private static final int MAX_TICK = 20_000;
+    private static final byte ONLINE = (byte) SystemUserStatus.ONLINE.ordinal();
+    private static final byte AWAY = (byte) SystemUserStatus.AWAY.ordinal();
+    private static final byte NONE = -1;
+
+    @Test
+    void wheelFiresEveryTimerOnceWithLastTagAndDeadline() {
+        TimerWheel wheel = new TimerWheel(4096, 1024, 0L);
+        Random random = new Random(2023);
+        long[] expectedTicks = new long[USERS + 1];
+        byte[] expectedTags = new byte[USERS + 1];
+        for (int userId = 1; userId <= USERS; userId++) {
+            expectedTicks[userId] = 1 + random.nextInt(MAX_TICK);
+            expectedTags[userId] = ONLINE;
+            wheel.arm(userId, ONLINE, expectedTicks[userId]);
+        }
+        for (int userId = 1; userId <= USERS; userId++) {
+            if (userId % 3 == 0) {
+                expectedTicks[userId] = 1 + random.nextInt(MAX_TICK);
+                assertThat(wheel.rearm(userId, ONLINE, expectedTicks[userId])).isTrue();
+            }
+            if (userId % 5 == 0) {
+                assertThat(wheel.rearm(userId, AWAY, 1 + random.nextInt(MAX_TICK))).isFalse();
+            }
+            if (userId % 11 == 0) {
+                expectedTicks[userId] = 1 + random.nextInt(MAX_TICK);
+                expectedTags[userId] = AWAY;
+                wheel.arm(userId, AWAY, expectedTicks[userId]);
+            }
+            if (userId % 7 == 0) {
+                assertThat(wheel.cancel(userId)).isTrue();
+                expectedTags[userId] = NONE;
+            }
+        }
+        assertThat(wheel.size()).isEqualTo(USERS - USERS / 7);
+
+        LongArrayList[] expired = {new LongArrayList(), new LongArrayList(), new LongArrayList()};
+        LongArrayList[] expiredDeadlineTicks = {new LongArrayList(), new LongArrayList(), new LongArrayList()};
+        int[] fired = new int[USERS + 1];
+        long previousTick = 0;
+        for (long tick = 7; previousTick < MAX_TICK; tick += 7) {
+            wheel.advance(tick, expired, expiredDeadlineTicks);
+            for (byte tag = 0; tag < expired.length; tag++) {
+                for (int i = 0; i < expired[tag].size(); i++) {
+                    int userId = (int) expired[tag].get(i);
+                    fired[userId]++;
+                    assertThat(tag).isEqualTo(expectedTags[userId]);
+                    assertThat(expiredDeadlineTicks[tag].get(i)).isEqualTo(expectedTicks[userId])
+                            .isGreaterThan(previousTick).isLessThanOrEqualTo(tick);
+                }
+                expired[tag].clear();
+                expiredDeadlineTicks[tag].clear();
+            }
+            previousTick = tick;
+        }
+
+        for (int userId = 1; userId <= USERS; userId++) {
+            assertThat(fired[userId]).isEqualTo(expectedTags[userId] == NONE ? 0 : 1);
+        }
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void engineRunsEveryTimerThroughOnlineAndAway() throws InterruptedException {
+        int[][] fired = new int[SystemUserStatus.values().length][USERS + 1];
+        CountDownLatch away = new CountDownLatch(USERS);
+        TimingWheelExpiryEngine[] engine = new TimingWheelExpiryEngine[1];
+        PresenceExpiryProperties properties = new PresenceExpiryProperties();
+        properties.setTickMs(10L);
+        properties.setFlushWindowMs(100L);
+        properties.setInitialCapacity(USERS);
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        // Called on the engine thread only, so the counters need no synchronization until the latch
+        beanFactory.registerSingleton("expiredUsersHandler", (ExpiredUsersHandler) (status, userIds) -> {
+            for (long userId : userIds) {
+                fired[status.ordinal()][(int) userId]++;
+            }
+            if (status == SystemUserStatus.ONLINE) {
+                long[] delaysMs = new long[userIds.length];
+                Arrays.fill(delaysMs, 500L);
+                engine[0].armIfAbsent(userIds, SystemUserStatus.AWAY, delaysMs);
+                // A second arm must not add a deadline or move the one just armed
+                engine[0].armIfAbsent(userIds, SystemUserStatus.AWAY, new long[userIds.length]);
+            } else {
+                for (int i = 0; i < userIds.length; i++) {
+                    away.countDown();
+                }
+            }
+        });
+        engine[0] = new TimingWheelExpiryEngine(properties,
+                beanFactory.getBeanProvider(ExpiredUsersHandler.class), new SimpleMeterRegistry());
+        long[] userIds = new long[USERS];
+        long[] delaysMs = new long[USERS];
+        long[] longDelaysMs = new long[USERS];
+        Random random = new Random(2023);
+        for (int i = 0; i < USERS; i++) {
+            userIds[i] = i + 1L;
+            delaysMs[i] = random.nextInt(1000);
+            longDelaysMs[i] = TimeUnit.HOURS.toMillis(1);
+        }
+        engine[0].arm(userIds, SystemUserStatus.ONLINE, delaysMs);
+        engine[0].armIfAbsent(userIds, SystemUserStatus.ONLINE, longDelaysMs);
+        assertThat(engine[0].getPendingTimerCount()).isEqualTo(USERS);
+
+        try {
+            engine[0].start();
+            assertThat(away.await(60, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            engine[0].stop();
+        }
+
+        for (int userId = 1; userId <= USERS; userId++) {
+            assertThat(fired[SystemUserStatus.ONLINE.ordinal()][userId]).isEqualTo(1);
+            assertThat(fired[SystemUserStatus.AWAY.ordinal()][userId]).isEqualTo(1);
+            assertThat(fired[SystemUserStatus.OFFLINE.ordinal()][userId]).isZero();
+        }
+        assertThat(engine[0].getPendingTimerCount()).isZero();
+    }
+}
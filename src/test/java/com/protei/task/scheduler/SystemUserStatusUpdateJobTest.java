@@ -0,0 +1,82 @@
+package com.protei.task.scheduler;
+
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.impl.StdSchedulerFactory;
+
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SystemUserStatusUpdateJobTest {
+    private QuartzExpiryEngine expiryEngine;
+
+    @AfterEach
+    void tearDown() {
+        expiryEngine.stop();
+    }
+
+    @Test
+    void retriesWhileHandlerFails() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(1);
+        expiryEngine = newEngine((status, userIds) -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new IllegalStateException("Database is down");
+            }
+            done.countDown();
+        });
+        expiryEngine.arm(1L, SystemUserStatus.ONLINE, 20L);
+
+        expiryEngine.start();
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(attempts.get()).isEqualTo(3);
+        awaitNoPendingTimers();
+    }
+
+    @Test
+    void keepsTimerArmedWhileHandlerFailed() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        expiryEngine = newEngine((status, userIds) -> {
+            attempts.incrementAndGet();
+            expiryEngine.arm(1L, SystemUserStatus.AWAY, TimeUnit.MINUTES.toMillis(10));
+            throw new IllegalStateException("Database is down");
+        });
+        expiryEngine.arm(1L, SystemUserStatus.ONLINE, 20L);
+
+        expiryEngine.start();
+        Thread.sleep(500L);
+
+        assertThat(attempts.get()).isEqualTo(1);
+        assertThat(expiryEngine.getRunningJob("1").getStatus()).isEqualTo(SystemUserStatus.AWAY);
+        assertThat(expiryEngine.rearm(1L, SystemUserStatus.AWAY, TimeUnit.MINUTES.toMillis(10))).isTrue();
+    }
+
+    private void awaitNoPendingTimers() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (expiryEngine.getPendingTimerCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertThat(expiryEngine.getPendingTimerCount()).isZero();
+    }
+
+    private static QuartzExpiryEngine newEngine(ExpiredUsersHandler handler) throws SchedulerException {
+        Properties quartzProperties = new Properties();
+        quartzProperties.setProperty(StdSchedulerFactory.PROP_SCHED_INSTANCE_NAME, "test-" + System.nanoTime());
+        quartzProperties.setProperty("org.quartz.threadPool.threadCount", "1");
+        Scheduler scheduler = new StdSchedulerFactory(quartzProperties).getScheduler();
+        PresenceExpiryProperties properties = new PresenceExpiryProperties();
+        properties.setRetryDelayMs(50L);
+        SystemUserStatusUpdateJob job = new SystemUserStatusUpdateJob(handler, properties, new SimpleMeterRegistry());
+        scheduler.setJobFactory((bundle, owner) -> job);
+        return new QuartzExpiryEngine(scheduler, new SimpleMeterRegistry());
+    }
+}
@@ -0,0 +1,154 @@
+package com.protei.task.scheduler;
+
+import com.protei.task.util.LongArrayList;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TimerWheelTest {
+    private static final int TAGS = 3;
+    private static final byte ONLINE = 0;
+    private static final byte AWAY = 1;
+
+    private final LongArrayList[] expired = new LongArrayList[TAGS];
+    private final LongArrayList[] expiredDeadlineTicks = new LongArrayList[TAGS];
+    private TimerWheel wheel;
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < TAGS; i++) {
+            expired[i] = new LongArrayList();
+            expiredDeadlineTicks[i] = new LongArrayList();
+        }
+        wheel = new TimerWheel(8, 4, 0L);
+    }
+
+    @Test
+    void rejectsWheelSizeThatIsNotPowerOfTwo() {
+        assertThatThrownBy(() -> new TimerWheel(12, 16, 0L)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void firesAtDeadlineTickWithTag() {
+        wheel.arm(1L, ONLINE, 3L);
+        wheel.arm(2L, AWAY, 5L);
+
+        wheel.advance(2L, expired, expiredDeadlineTicks);
+        assertThat(expired[ONLINE].toArray()).isEmpty();
+
+        wheel.advance(3L, expired, expiredDeadlineTicks);
+        assertThat(expired[ONLINE].toArray()).containsExactly(1L);
+        assertThat(expiredDeadlineTicks[ONLINE].toArray()).containsExactly(3L);
+        assertThat(expired[AWAY].toArray()).isEmpty();
+
+        wheel.advance(5L, expired, expiredDeadlineTicks);
+        assertThat(expired[AWAY].toArray()).containsExactly(2L);
+        assertThat(expiredDeadlineTicks[AWAY].toArray()).containsExactly(5L);
+        assertThat(wheel.size()).isZero();
+        assertThat(wheel.contains(1L)).isFalse();
+    }
+
+    @Test
+    void deadlineInPastFiresOnNextTick() {
+        wheel.advance(10L, expired, expiredDeadlineTicks);
+        wheel.arm(1L, ONLINE, 4L);
+
+        wheel.advance(11L, expired, expiredDeadlineTicks);
+
+        assertThat(expired[ONLINE].toArray()).containsExactly(1L);
+        assertThat(expiredDeadlineTicks[ONLINE].toArray()).containsExactly(11L);
+    }
+
+    @Test
+    void deadlineBeyondOneRotationWaitsForItsRound() {
+        wheel.arm(1L, ONLINE, 19L);
+
+        for (long tick = 1; tick < 19; tick++) {
+            wheel.advance(tick, expired, expiredDeadlineTicks);
+        }
+        assertThat(expired[ONLINE].toArray()).isEmpty();
+        assertThat(wheel.contains(1L)).isTrue();
+
+        wheel.advance(19L, expired, expiredDeadlineTicks);
+        assertThat(expired[ONLINE].toArray()).containsExactly(1L);
+    }
+
+    @Test
+    void advanceOverMoreThanOneRotationFiresEverythingDue() {
+        wheel.arm(1L, ONLINE, 3L);
+        wheel.arm(2L, ONLINE, 12L);
+        wheel.arm(3L, ONLINE, 40L);
+
+        wheel.advance(30L, expired, expiredDeadlineTicks);
+
+        assertThat(expired[ONLINE].toArray()).containsExactlyInAnyOrder(1L, 2L);
+        assertThat(wheel.contains(3L)).isTrue();
+    }
+
+    @Test
+    void armReplacesDeadlineAndTag() {
+        wheel.arm(1L, ONLINE, 3L);
+        wheel.arm(1L, AWAY, 6L);
+
+        assertThat(wheel.size()).isEqualTo(1);
+        wheel.advance(6L, expired, expiredDeadlineTicks);
+
+        assertThat(expired[ONLINE].toArray()).isEmpty();
+        assertThat(expired[AWAY].toArray()).containsExactly(1L);
+        assertThat(expiredDeadlineTicks[AWAY].toArray()).containsExactly(6L);
+    }
+
+    @Test
+    void rearmMovesDeadlineOnlyForSameTag() {
+        wheel.arm(1L, ONLINE, 3L);
+
+        assertThat(wheel.rearm(1L, AWAY, 7L)).isFalse();
+        assertThat(wheel.rearm(2L, ONLINE, 7L)).isFalse();
+        assertThat(wheel.contains(2L)).isFalse();
+        assertThat(wheel.rearm(1L, ONLINE, 7L)).isTrue();
+
+        wheel.advance(6L, expired, expiredDeadlineTicks);
+        assertThat(expired[ONLINE].toArray()).isEmpty();
+        wheel.advance(7L, expired, expiredDeadlineTicks);
+        assertThat(expired[ONLINE].toArray()).containsExactly(1L);
+    }
+
+    @Test
+    void cancelRemovesTimer() {
+        wheel.arm(1L, ONLINE, 3L);
+        wheel.arm(2L, ONLINE, 3L);
+
+        assertThat(wheel.cancel(1L)).isTrue();
+        assertThat(wheel.cancel(1L)).isFalse();
+        wheel.advance(3L, expired, expiredDeadlineTicks);
+
+        assertThat(expired[ONLINE].toArray()).containsExactly(2L);
+    }
+
+    @Test
+    void growsAndReusesNodes() {
+        for (long userId = 0; userId < 1000; userId++) {
+            wheel.arm(userId, ONLINE, 1 + userId % 20);
+        }
+        for (long userId = 0; userId < 1000; userId += 2) {
+            wheel.cancel(userId);
+        }
+        for (long userId = 1000; userId < 1500; userId++) {
+            wheel.arm(userId, AWAY, 25L);
+        }
+        assertThat(wheel.size()).isEqualTo(1000);
+
+        wheel.advance(25L, expired, expiredDeadlineTicks);
+
+        assertThat(expired[ONLINE].size()).isEqualTo(500);
+        for (int i = 0; i < expired[ONLINE].size(); i++) {
+            long userId = expired[ONLINE].get(i);
+            assertThat(userId % 2).isEqualTo(1L);
+            assertThat(expiredDeadlineTicks[ONLINE].get(i)).isEqualTo(1 + userId % 20);
+        }
+        assertThat(expired[AWAY].size()).isEqualTo(500);
+        assertThat(wheel.size()).isZero();
+    }
+}
@@ -0,0 +1,75 @@
+package com.protei.task.scheduler;
+
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimingWheelExpiryEngineTest {
+    private TimingWheelExpiryEngine expiryEngine;
+
+    @AfterEach
+    void tearDown() {
+        expiryEngine.stop();
+    }
+
+    @Test
+    void retriesBatchHandlerFailedOn() throws InterruptedException {
+        AtomicInteger attempts = new AtomicInteger();
+        List<Long> expired = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        expiryEngine = newEngine((status, userIds) -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("Database is down");
+            }
+            for (long userId : userIds) {
+                expired.add(userId);
+            }
+            done.countDown();
+        });
+        expiryEngine.arm(new long[]{1L, 2L}, SystemUserStatus.ONLINE, new long[]{20L, 20L});
+
+        expiryEngine.start();
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(attempts.get()).isEqualTo(2);
+        assertThat(expired).containsExactlyInAnyOrder(1L, 2L);
+        assertThat(expiryEngine.getPendingTimerCount()).isZero();
+    }
+
+    @Test
+    void keepsRetryingWhileHandlerFails() throws InterruptedException {
+        CountDownLatch failures = new CountDownLatch(3);
+        expiryEngine = newEngine((status, userIds) -> {
+            assertThat(status).isEqualTo(SystemUserStatus.AWAY);
+            assertThat(userIds).containsExactly(1L);
+            failures.countDown();
+            throw new IllegalStateException("Database is down");
+        });
+        expiryEngine.arm(1L, SystemUserStatus.AWAY, 20L);
+
+        expiryEngine.start();
+
+        assertThat(failures.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private static TimingWheelExpiryEngine newEngine(ExpiredUsersHandler handler) {
+        PresenceExpiryProperties properties = new PresenceExpiryProperties();
+        properties.setTickMs(10L);
+        properties.setFlushWindowMs(0L);
+        properties.setRetryDelayMs(50L);
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("expiredUsersHandler", handler);
+        return new TimingWheelExpiryEngine(properties,
+                beanFactory.getBeanProvider(ExpiredUsersHandler.class), new SimpleMeterRegistry());
+    }
+}
@@ -0,0 +1,69 @@
+package com.protei.task.systemuser;
+
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PresenceCountersTest {
+    private SystemUserRepository systemUserRepository;
+    private PresenceCounters presenceCounters;
+
+    @BeforeEach
+    void setUp() {
+        systemUserRepository = mock(SystemUserRepository.class);
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("presenceStore", mock(PresenceStore.class));
+        presenceCounters = new PresenceCounters(systemUserRepository, beanFactory.getBeanProvider(PresenceStore.class));
+    }
+
+    @Test
+    void correctsDriftSeenTwiceInARow() {
+        presenceCounters.onStatusChanged(1L, null, SystemUserStatus.ONLINE);
+        when(systemUserRepository.countSystemUsersByStatus()).thenReturn(Arrays.asList(
+                count(SystemUserStatus.ONLINE, 3L), count(SystemUserStatus.AWAY, 1L)));
+
+        presenceCounters.reconcile();
+        assertThat(presenceCounters.getSummary()).containsEntry(SystemUserStatus.ONLINE, 1L);
+        presenceCounters.reconcile();
+
+        assertThat(presenceCounters.getSummary())
+                .containsEntry(SystemUserStatus.ONLINE, 3L)
+                .containsEntry(SystemUserStatus.AWAY, 1L)
+                .containsEntry(SystemUserStatus.OFFLINE, 0L);
+    }
+
+    @Test
+    void countsUsersWithoutStatusAsOffline() {
+        for (long userId = 1; userId <= 3; userId++) {
+            presenceCounters.onStatusChanged(userId, null, SystemUserStatus.OFFLINE);
+        }
+        when(systemUserRepository.countSystemUsersByStatus()).thenReturn(Arrays.asList(
+                count(null, 2L), count(SystemUserStatus.OFFLINE, 1L)));
+
+        presenceCounters.reconcile();
+        presenceCounters.reconcile();
+
+        assertThat(presenceCounters.getSummary()).containsEntry(SystemUserStatus.OFFLINE, 3L);
+    }
+
+    private static SystemUserStatusCount count(SystemUserStatus status, long userCount) {
+        return new SystemUserStatusCount() {
+            @Override
+            public SystemUserStatus getUserStatus() {
+                return status;
+            }
+
+            @Override
+            public long getUserCount() {
+                return userCount;
+            }
+        };
+    }
+}
@@ -0,0 +1,151 @@
+package com.protei.task.systemuser;
+
+import com.protei.task.scheduler.PresenceExpiryProperties;
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PresenceStoreTest {
+    private static final List<Long> USER = Collections.singletonList(1L);
+
+    private SystemUserRepository systemUserRepository;
+    private PresenceStore presenceStore;
+
+    @BeforeEach
+    void setUp() {
+        systemUserRepository = mock(SystemUserRepository.class);
+        when(systemUserRepository.transitionSystemUserStatuses(anyCollection(), anyCollection(), any()))
+                .thenAnswer(invocation -> ((List<?>) invocation.getArgument(0)).size());
+        presenceStore = new PresenceStore(systemUserRepository, mock(JdbcTemplate.class),
+                mock(PlatformTransactionManager.class), new PresenceStoreProperties(), new PresenceExpiryProperties(),
+                new DefaultListableBeanFactory().getBeanProvider(PresenceChangeListener.class),
+                new SimpleMeterRegistry());
+    }
+
+    @Test
+    void flushesOneTransitionFromPersistedToCurrentStatus() {
+        presenceStore.load(1L, SystemUserStatus.OFFLINE);
+        presenceStore.setStatus(1L, SystemUserStatus.ONLINE);
+        presenceStore.setStatus(1L, SystemUserStatus.AWAY);
+
+        presenceStore.flush();
+        presenceStore.flush();
+
+        verify(systemUserRepository).transitionSystemUserStatuses(
+                USER, EnumSet.of(SystemUserStatus.OFFLINE), SystemUserStatus.AWAY);
+    }
+
+    @Test
+    void skipsUserBackInPersistedStatus() {
+        presenceStore.load(1L, SystemUserStatus.ONLINE);
+        presenceStore.setStatus(1L, SystemUserStatus.AWAY);
+        presenceStore.setStatus(1L, SystemUserStatus.ONLINE);
+
+        presenceStore.flush();
+
+        verify(systemUserRepository, never()).transitionSystemUserStatuses(anyCollection(), anyCollection(), any());
+    }
+
+    @Test
+    void failedFlushIsRetriedFromPersistedStatusAfterLaterChange() {
+        presenceStore.load(1L, SystemUserStatus.ONLINE);
+        presenceStore.setStatus(1L, SystemUserStatus.AWAY);
+        when(systemUserRepository.transitionSystemUserStatuses(
+                USER, EnumSet.of(SystemUserStatus.ONLINE), SystemUserStatus.AWAY)).thenAnswer(invocation -> {
+            presenceStore.setStatus(1L, SystemUserStatus.OFFLINE);
+            throw new QueryTimeoutException("Timed out");
+        });
+
+        presenceStore.flush();
+        presenceStore.flush();
+
+        verify(systemUserRepository).transitionSystemUserStatuses(
+                USER, EnumSet.of(SystemUserStatus.ONLINE), SystemUserStatus.OFFLINE);
+    }
+
+    @Test
+    void missedRowIsReconciledFromItsPersistedStatus() {
+        presenceStore.load(1L, SystemUserStatus.ONLINE);
+        presenceStore.setStatus(1L, SystemUserStatus.OFFLINE);
+        when(systemUserRepository.transitionSystemUserStatuses(
+                USER, EnumSet.of(SystemUserStatus.ONLINE), SystemUserStatus.OFFLINE)).thenReturn(0);
+        when(systemUserRepository.findSystemUserStatusesByIds(USER))
+                .thenReturn(Collections.singletonList(statusView(1L, SystemUserStatus.AWAY)));
+
+        presenceStore.flush();
+        presenceStore.flush();
+
+        verify(systemUserRepository).transitionSystemUserStatuses(
+                USER, EnumSet.of(SystemUserStatus.AWAY), SystemUserStatus.OFFLINE);
+    }
+
+    @Test
+    void removedUserIsNotFlushed() {
+        presenceStore.load(1L, SystemUserStatus.OFFLINE);
+        presenceStore.setStatus(1L, SystemUserStatus.ONLINE);
+        presenceStore.remove(1L);
+
+        presenceStore.flush();
+
+        assertThat(presenceStore.getStatus(1L)).isNull();
+        verify(systemUserRepository, never()).transitionSystemUserStatuses(anyCollection(), anyCollection(), any());
+    }
+
+    @Test
+    void userWithoutStatusIsLoadedOffline() {
+        assertThat(presenceStore.load(1L, null)).isEqualTo(SystemUserStatus.OFFLINE);
+        assertThat(presenceStore.load(1L, SystemUserStatus.AWAY)).isEqualTo(SystemUserStatus.OFFLINE);
+
+        assertThat(presenceStore.setStatus(1L, SystemUserStatus.ONLINE)).isEqualTo(SystemUserStatus.OFFLINE);
+        presenceStore.flush();
+
+        verify(systemUserRepository).transitionSystemUserStatuses(
+                USER, EnumSet.of(SystemUserStatus.OFFLINE), SystemUserStatus.ONLINE);
+    }
+
+    @Test
+    void compareAndSetOnlyChangesExpectedStatus() {
+        presenceStore.load(1L, SystemUserStatus.ONLINE);
+
+        assertThat(presenceStore.compareAndSet(1L, SystemUserStatus.AWAY, SystemUserStatus.OFFLINE)).isFalse();
+        assertThat(presenceStore.compareAndSet(1L, SystemUserStatus.ONLINE, SystemUserStatus.AWAY)).isTrue();
+        assertThat(presenceStore.compareAndSet(2L, SystemUserStatus.ONLINE, SystemUserStatus.AWAY)).isFalse();
+        presenceStore.flush();
+
+        assertThat(presenceStore.getStatus(1L)).isEqualTo(SystemUserStatus.AWAY);
+        verify(systemUserRepository).transitionSystemUserStatuses(
+                eq(USER), eq(EnumSet.of(SystemUserStatus.ONLINE)), eq(SystemUserStatus.AWAY));
+    }
+
+    private static SystemUserStatusView statusView(long id, SystemUserStatus status) {
+        return new SystemUserStatusView() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public SystemUserStatus getUserStatus() {
+                return status;
+            }
+        };
+    }
+}
@@ -0,0 +1,152 @@
+package com.protei.task.systemuser;
+
+import com.protei.task.scheduler.PresenceExpiryProperties;
+import com.protei.task.systemuser.enumeration.SystemUserStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PresenceSyncTest {
+    private final Map<Long, SystemUserStatus> rows = new HashMap<>();
+    private final List<String> notifications = new ArrayList<>();
+    private final List<String> changesOfB = new ArrayList<>();
+
+    private PresenceStore nodeA;
+    private PresenceStore nodeB;
+    private PresenceSync syncA;
+    private PresenceSync syncB;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        SystemUserRepository systemUserRepository = mock(SystemUserRepository.class);
+        when(systemUserRepository.lockSystemUserStatus(anyLong()))
+                .thenAnswer(invocation -> Optional.ofNullable(rows.get(invocation.<Long>getArgument(0)))
+                        .map(SystemUserStatus::name));
+        when(systemUserRepository.transitionSystemUserStatuses(anyCollection(), anyCollection(), any()))
+                .thenAnswer(invocation -> {
+                    int updated = 0;
+                    for (Long userId : invocation.<Collection<Long>>getArgument(0)) {
+                        if (invocation.<Collection<SystemUserStatus>>getArgument(1).contains(rows.get(userId))) {
+                            rows.put(userId, invocation.getArgument(2));
+                            updated++;
+                        }
+                    }
+                    return updated;
+                });
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.queryForObject(eq(PresenceSync.NOTIFY), eq(String.class), anyString()))
+                .thenAnswer(invocation -> {
+                    notifications.add(invocation.getArgument(2));
+                    return "";
+                });
+        PresenceExpiryProperties properties = new PresenceExpiryProperties();
+        properties.setEngine("database");
+        nodeA = node(systemUserRepository, jdbcTemplate, properties, new DefaultListableBeanFactory());
+        DefaultListableBeanFactory listenersOfB = new DefaultListableBeanFactory();
+        listenersOfB.registerSingleton("recorder", new PresenceChangeListener() {
+            @Override
+            public void onStatusChanged(long userId, SystemUserStatus previous, SystemUserStatus status) {
+                changesOfB.add("changed " + previous + " -> " + status);
+            }
+
+            @Override
+            public void onStatusSynced(long userId, SystemUserStatus previous, SystemUserStatus status) {
+                changesOfB.add("synced " + previous + " -> " + status);
+            }
+        });
+        nodeB = node(systemUserRepository, jdbcTemplate, properties, listenersOfB);
+        syncA = new PresenceSync(new DataSourceProperties(), nodeA, properties);
+        syncB = new PresenceSync(new DataSourceProperties(), nodeB, properties);
+        rows.put(1L, SystemUserStatus.OFFLINE);
+        nodeA.load(1L, SystemUserStatus.OFFLINE);
+        nodeB.load(1L, SystemUserStatus.OFFLINE);
+        changesOfB.clear();
+    }
+
+    @Test
+    void staleNodeWritesStatusFromPersistedOne() {
+        assertThat(nodeA.setStatus(1L, SystemUserStatus.ONLINE)).isEqualTo(SystemUserStatus.OFFLINE);
+
+        assertThat(nodeB.setStatus(1L, SystemUserStatus.OFFLINE)).isEqualTo(SystemUserStatus.ONLINE);
+
+        assertThat(rows.get(1L)).isEqualTo(SystemUserStatus.OFFLINE);
+        assertThat(nodeB.getStatus(1L)).isEqualTo(SystemUserStatus.OFFLINE);
+        assertThat(notifications).containsExactly(
+                PresenceSync.toPayload(1L, SystemUserStatus.ONLINE),
+                PresenceSync.toPayload(1L, SystemUserStatus.OFFLINE));
+    }
+
+    @Test
+    void staleNodeComparesWithPersistedStatus() {
+        nodeA.setStatus(1L, SystemUserStatus.ONLINE);
+
+        assertThat(nodeB.compareAndSet(1L, SystemUserStatus.OFFLINE, SystemUserStatus.AWAY)).isFalse();
+        assertThat(nodeB.compareAndSet(1L, SystemUserStatus.ONLINE, SystemUserStatus.AWAY)).isTrue();
+
+        assertThat(rows.get(1L)).isEqualTo(SystemUserStatus.AWAY);
+    }
+
+    @Test
+    void nodesConvergeOnNotificationsInCommitOrder() {
+        nodeA.setStatus(1L, SystemUserStatus.ONLINE);
+        nodeB.setStatus(1L, SystemUserStatus.OFFLINE);
+
+        for (String notification : notifications) {
+            syncA.onNotification(notification);
+            syncB.onNotification(notification);
+        }
+
+        assertThat(nodeA.getStatus(1L)).isEqualTo(SystemUserStatus.OFFLINE);
+        assertThat(nodeB.getStatus(1L)).isEqualTo(SystemUserStatus.OFFLINE);
+    }
+
+    @Test
+    void onlyTheWritingNodeReportsTheChange() {
+        nodeA.setStatus(1L, SystemUserStatus.ONLINE);
+        syncB.onNotification(notifications.get(0));
+        nodeB.setStatus(1L, SystemUserStatus.AWAY);
+        syncB.onNotification(notifications.get(1));
+
+        assertThat(changesOfB).containsExactly("synced OFFLINE -> ONLINE", "changed ONLINE -> AWAY");
+    }
+
+    @Test
+    void deletedUserIsNotWritten() {
+        rows.remove(1L);
+
+        assertThat(nodeB.setStatus(1L, SystemUserStatus.ONLINE)).isNull();
+
+        assertThat(nodeB.getStatus(1L)).isNull();
+        assertThat(notifications).isEmpty();
+    }
+
+    private static PresenceStore node(SystemUserRepository systemUserRepository,
+                                      JdbcTemplate jdbcTemplate,
+                                      PresenceExpiryProperties properties,
+                                      DefaultListableBeanFactory listeners) {
+        return new PresenceStore(systemUserRepository, jdbcTemplate, mock(PlatformTransactionManager.class),
+                new PresenceStoreProperties(), properties, listeners.getBeanProvider(PresenceChangeListener.class),
+                new SimpleMeterRegistry());
+    }
+}
@@ -0,0 +1,45 @@
+package com.protei.task.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LongArrayListTest {
+
+    @Test
+    void growsPastInitialCapacity() {
+        LongArrayList list = new LongArrayList(0);
+        for (long value = 0; value < 100; value++) {
+            list.add(value);
+        }
+
+        assertThat(list.size()).isEqualTo(100);
+        assertThat(list.get(99)).isEqualTo(99L);
+        assertThat(list.toArray()).hasSize(100).startsWith(0L, 1L, 2L);
+        assertThat(list.toArray(10, 13)).containsExactly(10L, 11L, 12L);
+    }
+
+    @Test
+    void rejectsIndexPastSize() {
+        LongArrayList list = new LongArrayList();
+        list.add(1L);
+
+        assertThatThrownBy(() -> list.get(1)).isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    @Test
+    void clearKeepsListUsable() {
+        LongArrayList list = new LongArrayList();
+        list.add(1L);
+        list.add(2L);
+
+        list.clear();
+
+        assertThat(list.isEmpty()).isTrue();
+        assertThat(list.toArray()).isEmpty();
+        assertThatThrownBy(() -> list.get(0)).isInstanceOf(IndexOutOfBoundsException.class);
+        list.add(3L);
+        assertThat(list.toArray()).containsExactly(3L);
+    }
+}
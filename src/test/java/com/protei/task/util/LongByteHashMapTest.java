@@ -0,0 +1,72 @@
+package com.protei.task.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LongByteHashMapTest {
+    private static final byte MISSING = -1;
+
+    @Test
+    void putGetAndRemove() {
+        LongByteHashMap map = new LongByteHashMap(4, MISSING);
+
+        assertThat(map.put(7L, (byte) 0)).isEqualTo(MISSING);
+        assertThat(map.put(7L, (byte) 2)).isEqualTo((byte) 0);
+        assertThat(map.get(7L)).isEqualTo((byte) 2);
+        assertThat(map.containsKey(8L)).isFalse();
+
+        assertThat(map.remove(7L)).isEqualTo((byte) 2);
+        assertThat(map.remove(7L)).isEqualTo(MISSING);
+        assertThat(map.isEmpty()).isTrue();
+    }
+
+    @Test
+    void rejectsMissingValue() {
+        LongByteHashMap map = new LongByteHashMap(4, MISSING);
+
+        assertThatThrownBy(() -> map.put(1L, MISSING)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void matchesHashMapUnderRandomOperations() {
+        LongByteHashMap map = new LongByteHashMap(16, MISSING);
+        Map<Long, Byte> expected = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextInt(5000) - 2500L;
+            if (random.nextInt(3) == 0) {
+                Byte previous = expected.remove(key);
+                assertThat(map.remove(key)).isEqualTo(previous == null ? MISSING : previous);
+            } else {
+                byte value = (byte) random.nextInt(3);
+                Byte previous = expected.put(key, value);
+                assertThat(map.put(key, value)).isEqualTo(previous == null ? MISSING : previous);
+            }
+        }
+        assertThat(map.size()).isEqualTo(expected.size());
+        Map<Long, Byte> visited = new HashMap<>();
+        map.forEach(visited::put);
+        assertThat(visited).isEqualTo(expected);
+    }
+
+    @Test
+    void clearEmptiesMap() {
+        LongByteHashMap map = new LongByteHashMap(4, MISSING);
+        for (long key = 0; key < 100; key++) {
+            map.put(key, (byte) 1);
+        }
+
+        map.clear();
+
+        assertThat(map.size()).isZero();
+        map.forEach((key, value) -> {
+            throw new AssertionError("Entry left after clear: " + key);
+        });
+    }
+}
@@ -0,0 +1,89 @@
+package com.protei.task.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LongIntHashMapTest {
+    private static final int MISSING = -1;
+
+    @Test
+    void putGetAndRemove() {
+        LongIntHashMap map = new LongIntHashMap(4, MISSING);
+
+        assertThat(map.put(7L, 1)).isEqualTo(MISSING);
+        assertThat(map.put(7L, 2)).isEqualTo(1);
+        assertThat(map.get(7L)).isEqualTo(2);
+        assertThat(map.containsKey(8L)).isFalse();
+        assertThat(map.size()).isEqualTo(1);
+
+        assertThat(map.remove(7L)).isEqualTo(2);
+        assertThat(map.remove(7L)).isEqualTo(MISSING);
+        assertThat(map.isEmpty()).isTrue();
+    }
+
+    @Test
+    void rejectsMissingValue() {
+        LongIntHashMap map = new LongIntHashMap(4, MISSING);
+
+        assertThatThrownBy(() -> map.put(1L, MISSING)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void storesZeroAndNegativeKeys() {
+        LongIntHashMap map = new LongIntHashMap(4, MISSING);
+        map.put(0L, 10);
+        map.put(-5L, 20);
+        map.put(Long.MIN_VALUE, 30);
+
+        assertThat(map.get(0L)).isEqualTo(10);
+        assertThat(map.get(-5L)).isEqualTo(20);
+        assertThat(map.get(Long.MIN_VALUE)).isEqualTo(30);
+    }
+
+    @Test
+    void matchesHashMapUnderRandomOperations() {
+        LongIntHashMap map = new LongIntHashMap(16, MISSING);
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            // A small key range keeps probe chains long, so removal has to shift entries back
+            long key = random.nextInt(5000);
+            if (random.nextInt(3) == 0) {
+                Integer previous = expected.remove(key);
+                assertThat(map.remove(key)).isEqualTo(previous == null ? MISSING : previous);
+            } else {
+                int value = random.nextInt(1000);
+                Integer previous = expected.put(key, value);
+                assertThat(map.put(key, value)).isEqualTo(previous == null ? MISSING : previous);
+            }
+        }
+        assertThat(map.size()).isEqualTo(expected.size());
+        for (long key = 0; key < 5000; key++) {
+            assertThat(map.get(key)).isEqualTo(expected.getOrDefault(key, MISSING));
+        }
+        Map<Long, Integer> visited = new HashMap<>();
+        map.forEach(visited::put);
+        assertThat(visited).isEqualTo(expected);
+    }
+
+    @Test
+    void clearEmptiesMap() {
+        LongIntHashMap map = new LongIntHashMap(4, MISSING);
+        for (long key = 0; key < 100; key++) {
+            map.put(key, 1);
+        }
+
+        map.clear();
+
+        assertThat(map.isEmpty()).isTrue();
+        assertThat(map.containsKey(42L)).isFalse();
+        map.put(42L, 3);
+        assertThat(map.get(42L)).isEqualTo(3);
+    }
+}
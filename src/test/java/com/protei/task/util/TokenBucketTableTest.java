@@ -0,0 +1,65 @@
+package com.protei.task.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TokenBucketTableTest {
+
+    @Test
+    void rejectsNonPositiveRateOrCapacity() {
+        assertThatThrownBy(() -> new TokenBucketTable(16, 0.0, 1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new TokenBucketTable(16, 1.0, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void allowsBurstOfCapacityThenRefuses() {
+        TokenBucketTable table = new TokenBucketTable(16, 1.0, 3);
+
+        assertThat(table.tryTake(1L)).isTrue();
+        assertThat(table.tryTake(1L)).isTrue();
+        assertThat(table.tryTake(1L)).isTrue();
+        assertThat(table.tryTake(1L)).isFalse();
+        assertThat(table.tryTake(2L)).isTrue();
+    }
+
+    @Test
+    void refillsAtTokenRate() throws InterruptedException {
+        TokenBucketTable table = new TokenBucketTable(16, 20.0, 1);
+        assertThat(table.tryTake(1L)).isTrue();
+        assertThat(table.tryTake(1L)).isFalse();
+
+        Thread.sleep(100L);
+
+        assertThat(table.tryTake(1L)).isTrue();
+        assertThat(table.tryTake(1L)).isFalse();
+    }
+
+    @Test
+    void keepsFixedSizeAndNeverRefusesNewKey() {
+        TokenBucketTable table = new TokenBucketTable(64, 1.0, 1);
+        int capacity = table.capacity();
+
+        for (long key = 0; key < 100_000; key++) {
+            assertThat(table.tryTake(key)).isTrue();
+        }
+
+        assertThat(table.capacity()).isEqualTo(capacity);
+    }
+
+    @Test
+    void evictsBucketClosestToFullFirst() {
+        // A single set of 4 ways: every key competes for the same slots
+        TokenBucketTable table = new TokenBucketTable(1, 1.0, 2);
+        table.tryTake(1L);
+        table.tryTake(1L);
+        for (long key = 2; key <= 4; key++) {
+            table.tryTake(key);
+        }
+
+        table.tryTake(5L);
+
+        assertThat(table.tryTake(1L)).isFalse();
+    }
+}